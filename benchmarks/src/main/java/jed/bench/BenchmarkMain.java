@@ -0,0 +1,74 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmark jar: the JMH command line, with the GC profiler on so that the allocation rate of
+ * every stage is reported next to its throughput. Giving profilers with -prof replaces it, and the listing and help
+ * options are handled by JMH itself.
+ *
+ * When the jar is built with the vector profile, the forked JVMs are also given the incubating Vector API module, the
+ * filters falling back to their scalar loops without it.
+ */
+public final class BenchmarkMain {
+  private static final List<String> VECTOR_MODULE = Arrays.asList("--add-modules", "jdk.incubator.vector");
+
+  private BenchmarkMain() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> arguments = Arrays.asList(args);
+
+    if(arguments.contains("-h") || arguments.contains("-l") || arguments.contains("-lp") ||
+      arguments.contains("-lprof") || arguments.contains("-lrf")) {
+      Main.main(args);
+      return;
+    }
+
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    OptionsBuilder options = new OptionsBuilder();
+    options.parent(commandLine);
+
+    if(!arguments.contains("-prof")) {
+      options.addProfiler(GCProfiler.class);
+    }
+
+    // Prepended rather than appended, the heap options of the benchmarks being appended by their annotations.
+    if(BenchmarkMain.class.getClassLoader().getResource("VectorConvolution.class") != null) {
+      List<String> prepend = new ArrayList<>(VECTOR_MODULE);
+      prepend.addAll(commandLine.getJvmArgsPrepend().orElse(new ArrayList<>()));
+      options.jvmArgsPrepend(prepend.toArray(new String[0]));
+    }
+
+    new Runner(options.build()).run();
+  }
+}
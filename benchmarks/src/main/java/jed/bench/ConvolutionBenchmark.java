@@ -0,0 +1,69 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * {@code Convolution.processImage()} of each filter (e. g. {@code Roberts.processImage()} for roberts): grayscale
+ * conversion and filtering by separate passes, or grayscale conversion, filtering and thresholding by the fused pass.
+ * The source pixels are restored before every call, out of the measured time.
+ */
+public class ConvolutionBenchmark extends StageBenchmark {
+  @Param({ "3BYTE_BGR", "INT_RGB", "INT_ARGB", "BYTE_GRAY" })
+  public String type;
+
+  @Param({ "sobel", "roberts", "scharr" })
+  public String filter;
+
+  @Param({ "false", "true" })
+  public boolean fused;
+
+  private BufferedImage source, work;
+  private Object convolution;
+
+  @Setup
+  public void createFilter() throws Throwable {
+    this.source = Images.create(this.megapixels, this.type, this.scene);
+    this.work = Images.copy(this.source);
+    this.convolution = Jed.filter(this.filter, this.work, THRESHOLD);
+    Jed.setFused(this.convolution, this.fused);
+    Jed.setParallelism(this.convolution, this.parallelism);
+    Jed.setFilterMatrices(this.convolution);
+  }
+
+  @Setup(Level.Invocation)
+  public void restoreImage() throws Throwable {
+    this.source.copyData(this.work.getRaster());
+    Jed.setImage(this.convolution, this.work);
+  }
+
+  @Benchmark
+  public void processImage() throws Throwable {
+    Jed.processImage(this.convolution);
+  }
+}
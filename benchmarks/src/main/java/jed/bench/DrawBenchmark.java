@@ -0,0 +1,47 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * {@code Vectorization.draw()} of the segments of the thresholded Sobel gradient, found by each engine.
+ */
+public class DrawBenchmark extends StageBenchmark {
+  @Param({ "SCAN", "CONTOURS" })
+  public String engine;
+
+  private Object vectorization;
+
+  @Setup
+  public void vectorizeImage() throws Throwable {
+    this.vectorization = this.vectorization(this.bitmap(), this.engine);
+    Jed.processImage(this.vectorization);
+  }
+
+  @Benchmark
+  public void draw() throws Throwable {
+    Jed.draw(this.vectorization);
+  }
+}
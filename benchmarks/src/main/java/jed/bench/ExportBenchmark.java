@@ -0,0 +1,64 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@code Vectorization.export(String)} of the segments of the thresholded Sobel gradient, found by each engine, to a
+ * temporary file of each format.
+ */
+public class ExportBenchmark extends StageBenchmark {
+  @Param({ "SCAN", "CONTOURS" })
+  public String engine;
+
+  @Param({ "svg", "svgz", "jseg" })
+  public String format;
+
+  private Object vectorization;
+  private File output;
+
+  @Setup
+  public void vectorizeImage() throws Throwable {
+    this.vectorization = this.vectorization(this.bitmap(), this.engine);
+    Jed.processImage(this.vectorization);
+    this.output = File.createTempFile("jed-bench", "." + this.format);
+  }
+
+  @TearDown
+  public void deleteOutput() throws IOException {
+    if(!this.output.delete() && this.output.exists()) {
+      throw new IOException("Cannot delete " + this.output);
+    }
+  }
+
+  @Benchmark
+  public void export() throws Throwable {
+    Jed.export(this.vectorization, this.output.getPath());
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * {@code Kernel.convertToGrayscale()}, converting the image in place. The source pixels are restored before every
+ * call, out of the measured time.
+ */
+public class GrayscaleBenchmark extends StageBenchmark {
+  @Param({ "3BYTE_BGR", "INT_RGB", "INT_ARGB", "BYTE_GRAY" })
+  public String type;
+
+  private BufferedImage source, work;
+  private Object kernel;
+
+  @Setup
+  public void createImage() throws Throwable {
+    this.source = Images.create(this.megapixels, this.type, this.scene);
+    this.work = Images.copy(this.source);
+    this.kernel = Jed.filter("sobel", this.work, THRESHOLD);
+  }
+
+  @Setup(Level.Invocation)
+  public void restoreImage() throws Throwable {
+    this.source.copyData(this.work.getRaster());
+    Jed.setImage(this.kernel, this.work);
+  }
+
+  @Benchmark
+  public void convertToGrayscale() throws Throwable {
+    Jed.convertToGrayscale(this.kernel);
+  }
+}
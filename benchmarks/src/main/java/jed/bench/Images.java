@@ -0,0 +1,147 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmark input images, generated at a given size, raster type and edge density. Synthetic scenes are drawn from a
+ * fixed seed, so every run sees the same pixels.
+ */
+final class Images {
+  /**
+   * Image drawn by the bundled scene, the screenshot of the application.
+   */
+  private static final String BUNDLED = "/JED.PNG";
+
+  private Images() {
+  }
+
+  /**
+   * Create an image of a 4:3 aspect ratio.
+   * @param megapixels Number of pixels, in millions.
+   * @param type Raster type: 3BYTE_BGR, INT_RGB, INT_ARGB or BYTE_GRAY.
+   * @param scene Scene drawn: sparse (a few large shapes), dense (many small shapes and strokes) or bundled (the
+   * bundled image scaled to the size).
+   * @return New image.
+   * @throws IOException If the bundled image could not be read.
+   */
+  static BufferedImage create(int megapixels, String type, String scene) throws IOException {
+    int width = (int) Math.round(Math.sqrt(megapixels * 1e6 * 4 / 3));
+    int height = (int) Math.round(width * 3 / 4.0);
+    BufferedImage image = new BufferedImage(width, height, rasterType(type));
+    Graphics2D graphics = image.createGraphics();
+
+    try {
+      switch(scene.toLowerCase(Locale.ROOT)) {
+        case "sparse":
+          drawShapes(graphics, width, height, 12 * megapixels, width / 8);
+          break;
+        case "dense":
+          drawShapes(graphics, width, height, 6000 * megapixels, 40);
+          break;
+        case "bundled":
+          graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+          graphics.drawImage(bundled(), 0, 0, width, height, null);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown scene " + scene);
+      }
+    } finally {
+      graphics.dispose();
+    }
+
+    return image;
+  }
+
+  private static int rasterType(String type) {
+    switch(type.toUpperCase(Locale.ROOT)) {
+      case "3BYTE_BGR":
+        return BufferedImage.TYPE_3BYTE_BGR;
+      case "INT_RGB":
+        return BufferedImage.TYPE_INT_RGB;
+      case "INT_ARGB":
+        return BufferedImage.TYPE_INT_ARGB;
+      case "BYTE_GRAY":
+        return BufferedImage.TYPE_BYTE_GRAY;
+      default:
+        throw new IllegalArgumentException("Unknown raster type " + type);
+    }
+  }
+
+  /**
+   * Draw antialiased ellipses and arcs of random colors over a gradient background.
+   * @param count Number of shapes.
+   * @param size Largest shape size, in pixels.
+   */
+  private static void drawShapes(Graphics2D graphics, int width, int height, int count, int size) {
+    Random random = new Random(42);
+    int i;
+
+    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    graphics.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, width, height, Color.LIGHT_GRAY));
+    graphics.fillRect(0, 0, width, height);
+
+    for(i = 0; i < count; i++) {
+      int x = random.nextInt(width), y = random.nextInt(height);
+      int w = 4 + random.nextInt(size), h = 4 + random.nextInt(size);
+
+      graphics.setColor(new Color(random.nextInt(0x1000000)));
+
+      if((i & 1) == 0) {
+        graphics.fillOval(x, y, w, h);
+      }
+      else {
+        graphics.setStroke(new BasicStroke(1 + random.nextInt(4)));
+        graphics.drawArc(x, y, w, h, random.nextInt(360), 90 + random.nextInt(270));
+      }
+    }
+  }
+
+  private static BufferedImage bundled() throws IOException {
+    try(InputStream in = Images.class.getResourceAsStream(BUNDLED)) {
+      if(in == null) {
+        throw new IOException("Bundled image " + BUNDLED + " not found");
+      }
+      return ImageIO.read(in);
+    }
+  }
+
+  /**
+   * @return Copy of an image, with the same raster type.
+   */
+  static BufferedImage copy(BufferedImage image) {
+    BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+    image.copyData(copy.getRaster());
+    return copy;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Calls into the JED classes. They live in the default package, which code in a named package cannot refer to, while
+ * JMH does not accept benchmarks in the default package. They are reached through method handles instead, looked up
+ * once and kept in constants, so calling them costs about as much as a direct call once compiled.
+ */
+final class Jed {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final MethodHandle CREATE_FILTER = method("Convolution", "create", String.class,
+    BufferedImage.class, int.class);
+  private static final MethodHandle SET_IMAGE = method("Kernel", "setImage", BufferedImage.class);
+  private static final MethodHandle GET_IMAGE = method("Kernel", "getImage");
+  private static final MethodHandle CONVERT_TO_GRAYSCALE = method("Kernel", "convertToGrayscale");
+  private static final MethodHandle PROCESS_IMAGE = method("Kernel", "processImage");
+  private static final MethodHandle SET_FILTER_MATRICES = method("Convolution", "setFilterMatrices");
+  private static final MethodHandle SET_FUSED = method("Convolution", "setFused", boolean.class);
+  private static final MethodHandle SET_PARALLELISM = method("Convolution", "setParallelism", int.class);
+  private static final MethodHandle APPLY_FILTER = method("Convolution", "applyFilter");
+  private static final MethodHandle APPLY_THRESHOLD = method("Convolution", "applyThreshold");
+  private static final MethodHandle GET_BITMAP = method("Convolution", "getBitmap");
+
+  private static final MethodHandle NEW_VECTORIZATION = constructor("Vectorization", type("Bitmap"));
+  private static final MethodHandle SET_ENGINE = method("Vectorization", "setEngine", type("Vectorization$Engine"));
+  private static final MethodHandle SET_SIMPLIFICATION = method("Vectorization", "setSimplification", double.class);
+  private static final MethodHandle SET_VECTORIZATION_PARALLELISM = method("Vectorization", "setParallelism",
+    int.class);
+  private static final MethodHandle DRAW = method("Vectorization", "draw");
+  private static final MethodHandle EXPORT = method("Vectorization", "export", String.class);
+  private static final MethodHandle SEGMENT_COUNT = MethodHandles.filterReturnValue(
+    method("Vectorization", "getSegmentStore"), method("SegmentStore", "size"));
+
+  private Jed() {
+  }
+
+  /**
+   * @see "Convolution.create(String, BufferedImage, int)"
+   */
+  static Object filter(String name, BufferedImage source, int threshold) throws Throwable {
+    return (Object) CREATE_FILTER.invokeExact(name, source, threshold);
+  }
+
+  static void setImage(Object kernel, BufferedImage image) throws Throwable {
+    SET_IMAGE.invokeExact(kernel, image);
+  }
+
+  static BufferedImage getImage(Object kernel) throws Throwable {
+    return (BufferedImage) GET_IMAGE.invokeExact(kernel);
+  }
+
+  static void convertToGrayscale(Object kernel) throws Throwable {
+    CONVERT_TO_GRAYSCALE.invokeExact(kernel);
+  }
+
+  static void processImage(Object kernel) throws Throwable {
+    PROCESS_IMAGE.invokeExact(kernel);
+  }
+
+  static void setFilterMatrices(Object filter) throws Throwable {
+    SET_FILTER_MATRICES.invokeExact(filter);
+  }
+
+  static void setFused(Object filter, boolean fused) throws Throwable {
+    SET_FUSED.invokeExact(filter, fused);
+  }
+
+  static void setParallelism(Object filter, int parallelism) throws Throwable {
+    SET_PARALLELISM.invokeExact(filter, parallelism);
+  }
+
+  static void applyFilter(Object filter) throws Throwable {
+    APPLY_FILTER.invokeExact(filter);
+  }
+
+  static void applyThreshold(Object filter) throws Throwable {
+    APPLY_THRESHOLD.invokeExact(filter);
+  }
+
+  static Object getBitmap(Object filter) throws Throwable {
+    return (Object) GET_BITMAP.invokeExact(filter);
+  }
+
+  static Object vectorization(Object bitmap) throws Throwable {
+    return (Object) NEW_VECTORIZATION.invokeExact(bitmap);
+  }
+
+  /**
+   * @param engine Name of the engine, see {@code Vectorization.Engine}.
+   */
+  static void setEngine(Object vectorization, String engine) throws Throwable {
+    SET_ENGINE.invoke(vectorization, engine(engine));
+  }
+
+  static void setSimplification(Object vectorization, double tolerance) throws Throwable {
+    SET_SIMPLIFICATION.invokeExact(vectorization, tolerance);
+  }
+
+  static void setVectorizationParallelism(Object vectorization, int parallelism) throws Throwable {
+    SET_VECTORIZATION_PARALLELISM.invokeExact(vectorization, parallelism);
+  }
+
+  static void draw(Object vectorization) throws Throwable {
+    DRAW.invokeExact(vectorization);
+  }
+
+  static void export(Object vectorization, String filename) throws Throwable {
+    EXPORT.invokeExact(vectorization, filename);
+  }
+
+  static int segmentCount(Object vectorization) throws Throwable {
+    return (int) SEGMENT_COUNT.invokeExact(vectorization);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object engine(String name) {
+    return Enum.valueOf((Class) type("Vectorization$Engine"), name);
+  }
+
+  private static Class<?> type(String name) {
+    try {
+      return Class.forName(name);
+    } catch (ClassNotFoundException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Handle of a method of a class or of its superclasses, with the instance (if any) and the results of JED types
+   * as {@link Object} so that handles can be invoked exactly from here.
+   */
+  private static MethodHandle method(String owner, String name, Class<?>... parameters) {
+    Class<?> type = type(owner);
+
+    for(; type != null; type = type.getSuperclass()) {
+      try {
+        Method method = type.getDeclaredMethod(name, parameters);
+        return erase(LOOKUP.unreflect(accessible(method)));
+      } catch (NoSuchMethodException e) {
+        // Declared higher in the hierarchy.
+      } catch (IllegalAccessException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    throw new ExceptionInInitializerError(owner + "." + name + " not found");
+  }
+
+  private static MethodHandle constructor(String owner, Class<?>... parameters) {
+    try {
+      Constructor<?> constructor = type(owner).getDeclaredConstructor(parameters);
+      return erase(LOOKUP.unreflectConstructor(accessible(constructor)));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static <T extends AccessibleObject> T accessible(T member) {
+    member.setAccessible(true);
+    return member;
+  }
+
+  /**
+   * Replace the JED types of a handle, which are not visible from here, by {@link Object}.
+   */
+  private static MethodHandle erase(MethodHandle handle) {
+    MethodType type = handle.type();
+    int i;
+
+    for(i = 0; i < type.parameterCount(); i++) {
+      if(!isVisible(type.parameterType(i))) {
+        type = type.changeParameterType(i, Object.class);
+      }
+    }
+    if(!isVisible(type.returnType())) {
+      type = type.changeReturnType(Object.class);
+    }
+
+    return handle.asType(type);
+  }
+
+  private static boolean isVisible(Class<?> type) {
+    return type.isPrimitive() || type.getPackage() != null && !type.getPackage().getName().isEmpty();
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings and parameters shared by the benchmarks of all the stages. Stages run on a single thread unless the
+ * parallelism parameter is set, e. g. {@code -p parallelism=8}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx8g" })
+@State(Scope.Benchmark)
+public abstract class StageBenchmark {
+  /**
+   * Black and white threshold, the default one of the batch mode.
+   */
+  static final int THRESHOLD = 100;
+
+  @Param({ "1", "12", "50" })
+  public int megapixels;
+
+  @Param({ "sparse", "dense", "bundled" })
+  public String scene;
+
+  @Param({ "1" })
+  public int parallelism;
+
+  /**
+   * @return Thresholded bitmap of the scene, filtered with the Sobel filter by the fused pass.
+   */
+  Object bitmap() throws Throwable {
+    BufferedImage source = Images.create(this.megapixels, "INT_RGB", this.scene);
+    Object filter = Jed.filter("sobel", source, THRESHOLD);
+
+    Jed.setFused(filter, true);
+    Jed.setParallelism(filter, this.parallelism);
+    Jed.setFilterMatrices(filter);
+    Jed.processImage(filter);
+    return Jed.getBitmap(filter);
+  }
+
+  /**
+   * @return Vectorization of a bitmap with an engine, not processed yet.
+   */
+  Object vectorization(Object bitmap, String engine) throws Throwable {
+    Object vectorization = Jed.vectorization(bitmap);
+
+    Jed.setEngine(vectorization, engine);
+    Jed.setVectorizationParallelism(vectorization, this.parallelism);
+    return vectorization;
+  }
+}
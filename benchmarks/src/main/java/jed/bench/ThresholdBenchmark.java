@@ -0,0 +1,61 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * {@code Convolution.applyThreshold()} of the gradient of the Sobel filter, computed by the separate passes. The
+ * gradient image is restored before every call, out of the measured time.
+ */
+public class ThresholdBenchmark extends StageBenchmark {
+  @Param({ "3BYTE_BGR", "INT_RGB", "INT_ARGB", "BYTE_GRAY" })
+  public String type;
+
+  private BufferedImage gradient, work;
+  private Object convolution;
+
+  @Setup
+  public void filterImage() throws Throwable {
+    this.convolution = Jed.filter("sobel", Images.create(this.megapixels, this.type, this.scene), THRESHOLD);
+    Jed.setParallelism(this.convolution, this.parallelism);
+    Jed.applyFilter(this.convolution);
+    this.gradient = Jed.getImage(this.convolution);
+    this.work = Images.copy(this.gradient);
+  }
+
+  @Setup(Level.Invocation)
+  public void restoreImage() throws Throwable {
+    this.gradient.copyData(this.work.getRaster());
+    Jed.setImage(this.convolution, this.work);
+  }
+
+  @Benchmark
+  public void applyThreshold() throws Throwable {
+    Jed.applyThreshold(this.convolution);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package jed.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * {@code Vectorization.processImage()} of the thresholded Sobel gradient, by each engine. A new vectorization is
+ * created before every call, out of the measured time.
+ */
+public class VectorizationBenchmark extends StageBenchmark {
+  @Param({ "SCAN", "CONTOURS" })
+  public String engine;
+
+  private Object bitmap, vectorization;
+
+  @Setup
+  public void thresholdImage() throws Throwable {
+    this.bitmap = this.bitmap();
+  }
+
+  @Setup(Level.Invocation)
+  public void createVectorization() throws Throwable {
+    this.vectorization = this.vectorization(this.bitmap, this.engine);
+  }
+
+  /**
+   * @return Number of segments, so that the result is used.
+   */
+  @Benchmark
+  public int processImage() throws Throwable {
+    Jed.processImage(this.vectorization);
+    return Jed.segmentCount(this.vectorization);
+  }
+}
@@ -0,0 +1,523 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Headless command line mode: filters, thresholds and vectorizes a batch of images on a pool of worker threads,
+ * without opening any window.
+ */
+class Batch {
+  /**
+   * Extensions of the image files picked up from directories.
+   */
+  private static final String[] EXTENSIONS = { ".png", ".jpg", ".jpeg", ".bmp", ".pgm" };
+
+  /**
+   * Number of rows per strip of binary PGM images when no strip size is given, those images being always read
+   * strip by strip from the memory-mapped file.
+   */
+  private static final int PGM_STRIP_ROWS = 256;
+
+  private String filter = "sobel";
+  private int threshold = 100;
+  private File outputDirectory;
+  private int jobs = Runtime.getRuntime().availableProcessors();
+  private Magnitude magnitude = Magnitude.EXACT;
+  private double simplification = -1;
+  private Vectorization.Engine engine = Vectorization.Engine.SCAN;
+
+  /**
+   * Extension of the vector outputs, .svgz writing them compressed and {@value SegmentFile#EXTENSION} as binary
+   * segments.
+   * @see VectorOutput#open(File)
+   */
+  private String vectorExtension = ".svg";
+
+  /**
+   * Whether the usage was asked for, in which case nothing is processed.
+   */
+  private boolean help;
+
+  /**
+   * Number of rows per strip in out-of-core mode, 0 to decode whole images.
+   * @see StripProcessor
+   */
+  private int stripRows;
+
+  /**
+   * Whether the gradient magnitude is written as well, as a PGM image next to the thresholded one.
+   */
+  private boolean gradient;
+  private final List<File> inputs = new ArrayList<>();
+
+  /**
+   * Result of processing one image.
+   */
+  private static class Result {
+    File input;
+    int width, height, segments;
+    long nanos;
+
+    /**
+     * Failure of the image, errors such as running out of memory on a large image included.
+     */
+    Throwable error;
+  }
+
+  /**
+   * Run the batch mode.
+   * @param args Command line arguments.
+   * @return Process exit status: 0 on success, 1 if some images failed, 2 on invalid arguments.
+   */
+  public static int run(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+
+    Batch batch = new Batch();
+
+    try {
+      batch.parse(args);
+    } catch (IllegalArgumentException | IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      usage(System.err);
+      return 2;
+    }
+
+    if(batch.help) {
+      usage(System.out);
+      return 0;
+    }
+
+    if(batch.inputs.isEmpty()) {
+      System.err.println("Error: no input image found.");
+      return 2;
+    }
+
+    try {
+      batch.checkOutputs();
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage());
+      return 2;
+    }
+
+    if(batch.outputDirectory != null && !batch.outputDirectory.isDirectory() && !batch.outputDirectory.mkdirs()) {
+      System.err.println("Error: cannot create output directory " + batch.outputDirectory);
+      return 2;
+    }
+
+    return batch.process();
+  }
+
+  private static void usage(PrintStream out) {
+    out.println("Usage: java Main [options] <image | directory | glob>...");
+    out.println("Filter, threshold and vectorize images to SVG files without opening the user interface.");
+    out.println("Segment files (" + SegmentFile.EXTENSION + ") given as input are converted to SVG.");
+    out.println("  -f, --filter <name>                   Convolution filter: sobel, prewitt, roberts, scharr or laplacian");
+    out.println("                                        (default: sobel)");
+    out.println("  -t, --threshold <0-255>               Black and white threshold (default: 100)");
+    out.println("  -o, --output <directory>              Output directory (default: next to each image)");
+    out.println("  -j, --jobs <count>                    Number of images processed at once (default: number of processors)");
+    out.println("  -m, --magnitude <exact|lut|l1|linf>   Gradient magnitude computation (default: exact)");
+    out.println("  -p, --polylines <tolerance>           Chain segments into polylines simplified within that many pixels");
+    out.println("                                        (0 only merges collinear segments)");
+    out.println("  -e, --engine <scan|contours>          Vectorization engine: straight runs in four directions from every");
+    out.println("                                        pixel, or edges traced as polylines (default: scan)");
+    out.println("  -z, --gzip                            Write gzip compressed SVG files (.svgz)");
+    out.println("  -b, --binary                          Write binary segment files (" + SegmentFile.EXTENSION + ") instead of SVG");
+    out.println("  -s, --strip-rows <rows>               Decode and process images by strips of that many rows, for images");
+    out.println("                                        larger than memory; also writes the thresholded image as PBM");
+    out.println("                                        (always done for binary PGM images, 256 rows by default)");
+    out.println("  -g, --gradient                        Also write the gradient magnitude as a PGM image (name-gradient.pgm),");
+    out.println("                                        processing the images by strips");
+    out.println("  -h, --help                            Show this help");
+  }
+
+  private void parse(String[] args) throws IOException {
+    int i;
+
+    for(i = 0; i < args.length; i++) {
+      String arg = args[i];
+
+      switch(arg) {
+        case "-f":
+        case "--filter":
+          this.filter = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+          // Fails on unknown filter names.
+          Convolution.matrixSize(this.filter);
+          break;
+        case "-t":
+        case "--threshold":
+          this.threshold = number(value(args, ++i, arg), arg);
+          if(this.threshold < 0 || this.threshold > 255) {
+            throw new IllegalArgumentException("threshold must be in range 0 - 255");
+          }
+          break;
+        case "-o":
+        case "--output":
+          // Created once all the arguments are valid.
+          this.outputDirectory = new File(value(args, ++i, arg));
+          break;
+        case "-j":
+        case "--jobs":
+          this.jobs = number(value(args, ++i, arg), arg);
+          if(this.jobs < 1) {
+            throw new IllegalArgumentException("there must be at least one job");
+          }
+          break;
+        case "-m":
+        case "--magnitude":
+          String mode = value(args, ++i, arg);
+          try {
+            this.magnitude = Magnitude.valueOf(mode.toUpperCase(Locale.ROOT));
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown magnitude mode " + mode);
+          }
+          break;
+        case "-p":
+        case "--polylines":
+          String tolerance = value(args, ++i, arg);
+          try {
+            this.simplification = Double.parseDouble(tolerance);
+          } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid tolerance '" + tolerance + "' for " + arg);
+          }
+          if(!(this.simplification >= 0)) {
+            throw new IllegalArgumentException("tolerance must be a non-negative number");
+          }
+          break;
+        case "-e":
+        case "--engine":
+          String engine = value(args, ++i, arg);
+          try {
+            this.engine = Vectorization.Engine.valueOf(engine.toUpperCase(Locale.ROOT));
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown vectorization engine " + engine);
+          }
+          break;
+        case "-z":
+        case "--gzip":
+          this.vectorExtension = ".svgz";
+          break;
+        case "-b":
+        case "--binary":
+          this.vectorExtension = SegmentFile.EXTENSION;
+          break;
+        case "-s":
+        case "--strip-rows":
+          this.stripRows = number(value(args, ++i, arg), arg);
+          if(this.stripRows < 1) {
+            throw new IllegalArgumentException("strips must have at least one row");
+          }
+          break;
+        case "-g":
+        case "--gradient":
+          this.gradient = true;
+          break;
+        case "-h":
+        case "--help":
+          this.help = true;
+          return;
+        default:
+          if(arg.startsWith("-")) {
+            throw new IllegalArgumentException("unknown option " + arg);
+          }
+          this.addInput(arg);
+      }
+    }
+  }
+
+  private static String value(String[] args, int i, String option) {
+    if(i >= args.length) {
+      throw new IllegalArgumentException("missing value for " + option);
+    }
+    return args[i];
+  }
+
+  private static int number(String value, String option) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid number '" + value + "' for " + option);
+    }
+  }
+
+  /**
+   * Add an image, all the images of a directory or all the images matching a glob pattern (for shells which do not
+   * expand them) to the inputs.
+   */
+  private void addInput(String arg) throws IOException {
+    File file = new File(arg);
+
+    if(file.isDirectory()) {
+      File[] children = file.listFiles();
+      List<File> images = new ArrayList<>();
+
+      if(children != null) {
+        for(File child : children) {
+          if(child.isFile() && isImage(child.getName())) {
+            images.add(child);
+          }
+        }
+      }
+
+      Collections.sort(images);
+      this.inputs.addAll(images);
+    }
+    else if(file.isFile()) {
+      this.inputs.add(file);
+    }
+    else if(arg.indexOf('*') >= 0 || arg.indexOf('?') >= 0 || arg.indexOf('[') >= 0 || arg.indexOf('{') >= 0) {
+      Path pattern = Paths.get(arg);
+      Path directory = pattern.getParent() == null ? Paths.get(".") : pattern.getParent();
+      List<File> matches = new ArrayList<>();
+
+      try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, pattern.getFileName().toString())) {
+        for(Path path : stream) {
+          if(Files.isRegularFile(path)) {
+            matches.add(path.toFile());
+          }
+        }
+      }
+
+      Collections.sort(matches);
+      this.inputs.addAll(matches);
+    }
+    else {
+      throw new IOException("no such file or directory: " + arg);
+    }
+  }
+
+  private static boolean isImage(String name) {
+    String lower = name.toLowerCase(Locale.ROOT);
+
+    for(String extension : EXTENSIONS) {
+      if(lower.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Process all the inputs on the worker pool, reporting each image as soon as it is done.
+   * @return Process exit status.
+   */
+  private int process() {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.jobs, this.inputs.size()));
+    CompletionService<Result> completion = new ExecutorCompletionService<>(pool);
+    long start = System.nanoTime();
+    long pixels = 0;
+    int done = 0, failed = 0, i;
+
+    for(final File input : this.inputs) {
+      completion.submit(new Callable<Result>() {
+        @Override
+        public Result call() {
+          return processImage(input);
+        }
+      });
+    }
+
+    try {
+      for(i = 0; i < this.inputs.size(); i++) {
+        Result result = completion.take().get();
+
+        if(result.error != null) {
+          failed++;
+          System.out.println(result.input + ": FAILED (" +
+            (result.error instanceof Error ? result.error.toString() : result.error.getMessage()) + ")");
+          continue;
+        }
+
+        done++;
+        pixels += (long) result.width * result.height;
+        System.out.println(String.format(Locale.ROOT, "%s: %dx%d, %d segments, %.1f ms",
+          result.input, result.width, result.height, result.segments, result.nanos / 1e6));
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      System.err.println("Batch interrupted: " + e.getMessage());
+      return 1;
+    } finally {
+      pool.shutdownNow();
+    }
+
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format(Locale.ROOT, "%d images (%.1f megapixels) in %.2f s: %.2f images/s, %.2f megapixels/s, %d failed",
+      done, pixels / 1e6, seconds, done / seconds, pixels / 1e6 / seconds, failed));
+
+    return failed == 0 ? 0 : 1;
+  }
+
+  /**
+   * Filter, threshold and vectorize one image. The filter runs on the calling worker thread only, the images
+   * themselves being processed in parallel. Any failure, errors included, is reported in the result so that the
+   * other images are processed still.
+   */
+  private Result processImage(File input) {
+    Result result = new Result();
+    long start = System.nanoTime();
+
+    result.input = input;
+
+    try {
+      if(input.getName().toLowerCase(Locale.ROOT).endsWith(SegmentFile.EXTENSION)) {
+        this.convert(input, result);
+        result.nanos = System.nanoTime() - start;
+        return result;
+      }
+
+      if(this.stripRows > 0 || this.gradient || Netpbm.isPgm(input)) {
+        StripProcessor strips = new StripProcessor(this.filter, this.threshold,
+          this.stripRows > 0 ? this.stripRows : PGM_STRIP_ROWS);
+        strips.setMagnitude(this.magnitude);
+        strips.setSimplification(this.simplification);
+        strips.setEngine(this.engine);
+        result.segments = strips.process(input, this.outputFor(input, ".pbm"),
+          this.gradient ? this.outputFor(input, "-gradient.pgm") : null, this.outputFor(input, this.vectorExtension));
+        result.width = strips.getWidth();
+        result.height = strips.getHeight();
+        result.nanos = System.nanoTime() - start;
+        return result;
+      }
+
+      Telemetry.Span decode = Telemetry.start(Telemetry.Stage.DECODE);
+      BufferedImage source = ImageIO.read(input);
+
+      if(source == null) {
+        throw new IOException("unsupported image format");
+      }
+      decode.size(source.getWidth(), source.getHeight()).end();
+
+      result.width = source.getWidth();
+      result.height = source.getHeight();
+
+      Convolution convolution = Convolution.create(this.filter, source, this.threshold);
+      convolution.setParallelism(1);
+      convolution.setFused(true);
+      convolution.setBitmapOnly(true);
+      convolution.setMagnitude(this.magnitude);
+      convolution.applyFilter();
+      convolution.applyThreshold();
+
+      Vectorization vectorization = new Vectorization(convolution.getBitmap());
+      vectorization.setSimplification(this.simplification);
+      vectorization.setEngine(this.engine);
+      vectorization.processImage();
+      vectorization.export(this.outputFor(input, this.vectorExtension).getPath());
+
+      result.segments = vectorization.getSegmentStore().size();
+    } catch (IOException | RuntimeException | Error e) {
+      result.error = e;
+    }
+
+    result.nanos = System.nanoTime() - start;
+    return result;
+  }
+
+  /**
+   * Convert a segment file to SVG, streaming the segments from one file to the other.
+   */
+  private void convert(File input, Result result) throws IOException {
+    String extension = this.vectorExtension.equals(SegmentFile.EXTENSION) ? ".svg" : this.vectorExtension;
+    File output = this.outputFor(input, extension);
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.WRITE);
+
+    try(SegmentFile.Input in = new SegmentFile.Input(input);
+        VectorOutput out = VectorOutput.open(output)) {
+      result.width = in.getWidth();
+      result.height = in.getHeight();
+      out.begin(in.getWidth(), in.getHeight());
+
+      // Segments following each other, e. g. the ones of a polyline, are joined back.
+      boolean joined = false;
+      int x = 0, y = 0;
+
+      while(in.next()) {
+        if(joined && in.getX1() == x && in.getY1() == y) {
+          out.lineTo(in.getX2(), in.getY2());
+        }
+        else {
+          out.line(in.getX1(), in.getY1(), in.getX2(), in.getY2());
+        }
+
+        joined = true;
+        x = in.getX2();
+        y = in.getY2();
+        result.segments++;
+      }
+    }
+
+    span.size(result.width, result.height).segments(result.segments).bytes(output.length()).end();
+  }
+
+  /**
+   * Make sure no two inputs are written to the same outputs, which happens when inputs of different directories
+   * have the same name and are written to a single output directory.
+   * @throws IllegalArgumentException On the first two inputs whose outputs collide.
+   */
+  private void checkOutputs() {
+    Map<File, File> writers = new HashMap<>();
+
+    for(File input : this.inputs) {
+      File output = this.outputFor(input, "").getAbsoluteFile();
+      File other = writers.put(output, input);
+
+      if(other != null) {
+        throw new IllegalArgumentException(other + " and " + input + " would both be written to " + output + ".*");
+      }
+    }
+  }
+
+  /**
+   * @return File an output of an input image is written to.
+   */
+  private File outputFor(File input, String extension) {
+    String name = input.getName();
+    int dot = name.lastIndexOf('.');
+
+    if(dot > 0) {
+      name = name.substring(0, dot);
+    }
+
+    File directory = this.outputDirectory != null ? this.outputDirectory : input.getAbsoluteFile().getParentFile();
+    return new File(directory, name + extension);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.awt.image.BufferedImage;
+
+/**
+ * Black and white image packed in 64 bit words, one bit per pixel, set bits being white pixels. The words run down
+ * the columns rather than along the rows, as {@link Vectorization} scans the image column by column: the white
+ * pixels of a column are found a word at a time, skipping empty words altogether.
+ */
+final class Bitmap {
+  private final int width;
+  private final int height;
+
+  /**
+   * Number of words per column.
+   */
+  private final int words;
+
+  /**
+   * Words of column x are at [x * words, (x + 1) * words), pixel y being bit y % 64 of word y / 64.
+   */
+  private final long[] bits;
+
+  /**
+   * Create an all black bitmap.
+   * @param width Bitmap width.
+   * @param height Bitmap height.
+   */
+  public Bitmap(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.words = (height + 63) >>> 6;
+    this.bits = new long[width * this.words];
+  }
+
+  /**
+   * @param image Black and white image.
+   * @return Bitmap with white pixels where the image is opaque white.
+   */
+  public static Bitmap of(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] row = new int[width];
+    Bitmap bitmap = new Bitmap(width, height);
+    int x, y;
+
+    for(y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+
+      for(x = 0; x < width; x++) {
+        if(row[x] == 0xFFFFFFFF) {
+          bitmap.set(x, y);
+        }
+      }
+    }
+
+    return bitmap;
+  }
+
+  /**
+   * @param values Gray levels in row-major order.
+   * @param width Image width.
+   * @param height Image height.
+   * @param threshold Black and white threshold value.
+   * @return Bitmap with white pixels where the gray level is greater than the threshold.
+   * @see RasterAccess#writeBinary(BufferedImage, int, int, int[], int, int)
+   */
+  public static Bitmap threshold(int[] values, int width, int height, int threshold) {
+    Bitmap bitmap = new Bitmap(width, height);
+    bitmap.setRows(0, height, values, 0, threshold);
+    return bitmap;
+  }
+
+  /**
+   * Threshold a range of rows into the bitmap.
+   * @param fromRow First row to write.
+   * @param toRow Row following the last row to write.
+   * @param values Gray levels in row-major order.
+   * @param offset Index in the source array of the first pixel of the first row.
+   * @param threshold Black and white threshold value.
+   */
+  public void setRows(int fromRow, int toRow, int[] values, int offset, int threshold) {
+    int x, y, i = offset;
+
+    for(y = fromRow; y < toRow; y++) {
+      int word = y >>> 6;
+      long bit = 1L << y;
+      long clear = ~bit;
+
+      for(x = 0; x < this.width; x++, word += this.words) {
+        if(values[i++] > threshold) {
+          this.bits[word] |= bit;
+        }
+        else {
+          this.bits[word] &= clear;
+        }
+      }
+    }
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * @return Number of words per column.
+   */
+  int getWords() {
+    return this.words;
+  }
+
+  /**
+   * @param x Column.
+   * @param word Word of the column.
+   * @return The pixels of the word, pixel y being bit y % 64.
+   */
+  long getWord(int x, int word) {
+    return this.bits[x * this.words + word];
+  }
+
+  public boolean get(int x, int y) {
+    return (this.bits[x * this.words + (y >>> 6)] & (1L << y)) != 0;
+  }
+
+  public void set(int x, int y) {
+    this.bits[x * this.words + (y >>> 6)] |= 1L << y;
+  }
+
+  public void clear(int x, int y) {
+    this.bits[x * this.words + (y >>> 6)] &= ~(1L << y);
+  }
+
+  /**
+   * @return Independent copy of the bitmap.
+   */
+  public Bitmap copy() {
+    Bitmap copy = new Bitmap(this.width, this.height);
+    System.arraycopy(this.bits, 0, copy.bits, 0, this.bits.length);
+    return copy;
+  }
+
+  /**
+   * @param rows Number of rows to keep.
+   * @return Copy of the first rows of the bitmap.
+   */
+  public Bitmap topRows(int rows) {
+    Bitmap top = new Bitmap(this.width, rows);
+    long last = (rows & 63) == 0 ? -1L : (1L << rows) - 1;
+    int x;
+
+    if(rows == 0) {
+      return top;
+    }
+
+    for(x = 0; x < this.width; x++) {
+      System.arraycopy(this.bits, x * this.words, top.bits, x * top.words, top.words);
+      top.bits[(x + 1) * top.words - 1] &= last;
+    }
+
+    return top;
+  }
+}
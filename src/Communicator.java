@@ -19,7 +19,6 @@
  * along with this program; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ChangeEvent;
@@ -31,6 +30,12 @@ import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class of the user interface.
@@ -76,6 +81,36 @@ public class Communicator extends JFrame {
   private JScrollPane pnlNew;
   private JPanel pnlBody;
   private File image;
+  /**
+   * Gradient magnitude of the last filtered image, with the file, its modification time and the filter it was
+   * computed for.
+   */
+  private GradientMap gradientMap;
+  private File gradientImage;
+  private long gradientImageModified;
+  private String gradientFilter;
+  /**
+   * Decoded source images, using at most a quarter of the heap unless the jed.imageCacheBytes system property says
+   * otherwise.
+   */
+  private final ImageCache imageCache = new ImageCache(Long.getLong("jed.imageCacheBytes", Runtime.getRuntime().maxMemory() / 4));
+  /**
+   * Background thread doing all the image processing, so that the user interface never waits for it.
+   */
+  private final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "JED worker");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+  /**
+   * Last submitted preview job and the number of the latest request. A job only publishes its result if no newer
+   * request was made in the meantime.
+   */
+  private Future<?> pendingJob;
+  private final AtomicInteger latestRequest = new AtomicInteger();
   private final JFileChooser selectImage = new JFileChooser();
   private final JFileChooser saveImage = new JFileChooser();
 
@@ -89,8 +124,8 @@ public class Communicator extends JFrame {
     FileNameExtensionFilter imagesOnly = new FileNameExtensionFilter("Image files (*.png, *.jpg, *.jpeg, *.bmp)", imageExtensions);
     selectImage.setFileFilter(imagesOnly);
     selectImage.addChoosableFileFilter(imagesOnly);
-    String[] svgExtension = new String[]{"svg"};
-    FileNameExtensionFilter svgOnly = new FileNameExtensionFilter("SVG - Scalable Vector Graphics (*.svg)", svgExtension);
+    String[] svgExtension = new String[]{"svg", "svgz"};
+    FileNameExtensionFilter svgOnly = new FileNameExtensionFilter("SVG - Scalable Vector Graphics (*.svg, *.svgz)", svgExtension);
     saveImage.setFileFilter(svgOnly);
     saveImage.addChoosableFileFilter(svgOnly);
 
@@ -149,40 +184,34 @@ public class Communicator extends JFrame {
           return;
         }
 
-        BufferedImage source = null;
-
-        try {
-          source = ImageIO.read(image);
-        } catch (IOException exception) {
-          System.out.println("I/O Error while reading selected image: " + exception.toString());
-        }
-
-        if (rdbFilterSobel.isSelected()) {
-          Sobel sobel = new Sobel(source);
-          sobel.applySobel();
+        final File source = image;
+        final String filter = getSelectedFilter();
 
-          ImageIcon afterImage = new ImageIcon(sobel.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-        }
+        final int request = cancelPreview();
 
-        if (rdbFilterPrewitt.isSelected()) {
-          Prewitt prewitt = new Prewitt(source);
-          prewitt.applyPrewitt();
+        submitPreview(new Runnable() {
+          @Override
+          public void run() {
+            GradientMap gradient;
 
-          ImageIcon afterImage = new ImageIcon(prewitt.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-        }
+            try {
+              gradient = getGradientMap(source, filter);
+            } catch (IOException exception) {
+              System.out.println("I/O Error while reading selected image: " + exception.toString());
+              return;
+            }
 
-        if (rdbFilterRoberts.isSelected()) {
-          Roberts roberts = new Roberts(source);
-          roberts.applyRoberts();
+            final ImageIcon afterImage = new ImageIcon(gradient.toImage());
 
-          ImageIcon afterImage = new ImageIcon(roberts.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-        }
+            publish(request, new Runnable() {
+              @Override
+              public void run() {
+                lblAfterImage.setText("");
+                lblAfterImage.setIcon(afterImage);
+              }
+            });
+          }
+        });
       }
     });
     sldThresholdChanger.addChangeListener(new ChangeListener() {
@@ -198,46 +227,42 @@ public class Communicator extends JFrame {
           return;
         }
 
-        Integer currentThreshold = sldThresholdChanger.getValue();
+        final Integer currentThreshold = sldThresholdChanger.getValue();
         lblThresholdCurrentValue.setText(currentThreshold.toString());
 
-        BufferedImage source = null;
-
-        try {
-          source = ImageIO.read(image);
-        } catch (IOException exception) {
-          System.out.println("I/O Error while reading selected image: " + exception.toString());
-        }
-
-        if (rdbFilterSobel.isSelected()) {
-          Sobel sobel = new Sobel(source, currentThreshold);
-          sobel.applySobel();
-          sobel.applyThreshold();
-
-          ImageIcon afterImage = new ImageIcon(sobel.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-        }
-
-        if (rdbFilterPrewitt.isSelected()) {
-          Prewitt prewitt = new Prewitt(source, currentThreshold);
-          prewitt.applyPrewitt();
-          prewitt.applyThreshold();
-
-          ImageIcon afterImage = new ImageIcon(prewitt.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-        }
-
-        if (rdbFilterRoberts.isSelected()) {
-          Roberts roberts = new Roberts(source, currentThreshold);
-          roberts.applyRoberts();
-          roberts.applyThreshold();
-
-          ImageIcon afterImage = new ImageIcon(roberts.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-        }
+        final File source = image;
+        final String filter = getSelectedFilter();
+
+        final int request = cancelPreview();
+
+        submitPreview(new Runnable() {
+          @Override
+          public void run() {
+            GradientMap gradient;
+
+            try {
+              gradient = getGradientMap(source, filter);
+            } catch (IOException exception) {
+              System.out.println("I/O Error while reading selected image: " + exception.toString());
+              return;
+            }
+
+            // A newer threshold was requested while filtering, give way to it.
+            if (Thread.currentThread().isInterrupted()) {
+              return;
+            }
+
+            final ImageIcon afterImage = new ImageIcon(gradient.threshold(currentThreshold));
+
+            publish(request, new Runnable() {
+              @Override
+              public void run() {
+                lblAfterImage.setText("");
+                lblAfterImage.setIcon(afterImage);
+              }
+            });
+          }
+        });
       }
     });
     btnVectExport.addActionListener(new ActionListener() {
@@ -258,77 +283,62 @@ public class Communicator extends JFrame {
           return;
         }
 
-        Integer currentThreshold = sldThresholdChanger.getValue();
-        String output = txfVectSavePath.getText();
-
-        BufferedImage source = null;
-
-        try {
-          source = ImageIO.read(image);
-        } catch (IOException exception) {
-          JOptionPane.showMessageDialog(pnlMain, exception.getMessage(), "Failed to read source image!", JOptionPane.ERROR_MESSAGE);
-          return;
-        }
-
-        if (rdbFilterSobel.isSelected()) {
-          Sobel sobel = new Sobel(source, currentThreshold);
-          sobel.applySobel();
-          sobel.applyThreshold();
-
-          ImageIcon afterImage = new ImageIcon(sobel.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-
-          Vectorization vectorization = new Vectorization(sobel.getImage());
-          vectorization.processImage();
-          vectorization.draw();
-
-          ImageIcon vectImage = new ImageIcon(vectorization.getOutput());
-          lblVectResult.setText("");
-          lblVectResult.setIcon(vectImage);
-
-          vectorization.export(output);
-        }
-
-        if (rdbFilterPrewitt.isSelected()) {
-          Prewitt prewitt = new Prewitt(source, currentThreshold);
-          prewitt.applyPrewitt();
-          prewitt.applyThreshold();
-
-          ImageIcon afterImage = new ImageIcon(prewitt.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-
-          Vectorization vectorization = new Vectorization(prewitt.getImage());
-          vectorization.processImage();
-          vectorization.draw();
-
-          ImageIcon vectImage = new ImageIcon(vectorization.getOutput());
-          lblVectResult.setText("");
-          lblVectResult.setIcon(vectImage);
-
-          vectorization.export(output);
-        }
-
-        if (rdbFilterRoberts.isSelected()) {
-          Roberts roberts = new Roberts(source, currentThreshold);
-          roberts.applyRoberts();
-          roberts.applyThreshold();
-
-          ImageIcon afterImage = new ImageIcon(roberts.getImage());
-          lblAfterImage.setText("");
-          lblAfterImage.setIcon(afterImage);
-
-          Vectorization vectorization = new Vectorization(roberts.getImage());
-          vectorization.processImage();
-          vectorization.draw();
-
-          ImageIcon vectImage = new ImageIcon(vectorization.getOutput());
-          lblVectResult.setText("");
-          lblVectResult.setIcon(vectImage);
-
-          vectorization.export(output);
-        }
+        final Integer currentThreshold = sldThresholdChanger.getValue();
+        final String output = txfVectSavePath.getText();
+        final File source = image;
+        final String filter = getSelectedFilter();
+
+        // Previews still running are outdated by the export, which is never cancelled itself.
+        cancelPreview();
+        worker.submit(new Runnable() {
+          @Override
+          public void run() {
+            GradientMap gradient;
+
+            try {
+              gradient = getGradientMap(source, filter);
+            } catch (final IOException exception) {
+              SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                  JOptionPane.showMessageDialog(pnlMain, exception.getMessage(), "Failed to read source image!", JOptionPane.ERROR_MESSAGE);
+                }
+              });
+              return;
+            }
+
+            BufferedImage thresholded = gradient.threshold(currentThreshold);
+            final ImageIcon afterImage = new ImageIcon(thresholded);
+
+            Vectorization vectorization = new Vectorization(gradient.bitmap(currentThreshold));
+            vectorization.setStriped(true);
+            vectorization.processImage();
+            vectorization.draw();
+
+            final ImageIcon vectImage = new ImageIcon(vectorization.getOutput());
+
+            SwingUtilities.invokeLater(new Runnable() {
+              @Override
+              public void run() {
+                lblAfterImage.setText("");
+                lblAfterImage.setIcon(afterImage);
+                lblVectResult.setText("");
+                lblVectResult.setIcon(vectImage);
+              }
+            });
+
+            try {
+              vectorization.export(output);
+            } catch (final IOException exception) {
+              SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                  JOptionPane.showMessageDialog(pnlMain, exception.getMessage(), "Failed to save output document!", JOptionPane.ERROR_MESSAGE);
+                }
+              });
+            }
+          }
+        });
       }
     });
     btnSelectSVGPath.addActionListener(new ActionListener() {
@@ -339,7 +349,9 @@ public class Communicator extends JFrame {
         if (status == JFileChooser.APPROVE_OPTION) {
           String outputPath = saveImage.getSelectedFile().getAbsolutePath();
 
-          if (!outputPath.endsWith(".svg") && !outputPath.endsWith(".SVG")) {
+          String lowerCase = outputPath.toLowerCase(Locale.ROOT);
+
+          if (!lowerCase.endsWith(".svg") && !lowerCase.endsWith(".svgz")) {
             outputPath += ".svg";
           }
           txfVectSavePath.setText(outputPath);
@@ -348,6 +360,100 @@ public class Communicator extends JFrame {
     });
   }
 
+  /**
+   * @return Name of the selected filter.
+   */
+  private String getSelectedFilter() {
+    return rdbFilterSobel.isSelected() ? "Sobel" : rdbFilterPrewitt.isSelected() ? "Prewitt" : "Roberts";
+  }
+
+  /**
+   * Run a preview job on the worker thread. Jobs check for interruption between their steps, and the filters and
+   * the vectorization between their blocks of rows (ending the job with a
+   * {@link java.util.concurrent.CancellationException}), so while the slider is dragged only the latest value is
+   * computed.
+   * @param job Job to run.
+   * @see Communicator#cancelPreview()
+   */
+  private void submitPreview(Runnable job) {
+    pendingJob = worker.submit(job);
+  }
+
+  /**
+   * Cancel the last preview job, whether it is still waiting or already running, and make sure it does not
+   * publish anything.
+   * @return Number of the new request superseding it.
+   */
+  private int cancelPreview() {
+    if (pendingJob != null) {
+      pendingJob.cancel(true);
+      pendingJob = null;
+    }
+
+    return latestRequest.incrementAndGet();
+  }
+
+  /**
+   * Show the result of a job on the event dispatch thread, unless a newer request was made meanwhile.
+   * @param request Number of the request the job was started for.
+   * @param update User interface update.
+   */
+  private void publish(final int request, final Runnable update) {
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        if (request == latestRequest.get()) {
+          update.run();
+        }
+      }
+    });
+  }
+
+  /**
+   * Get the gradient magnitude of the selected image for the selected filter. It is computed once and kept until
+   * the image, its content or the filter change, so moving the threshold slider or exporting the result only
+   * thresholds it again.
+   * Only called from the worker thread.
+   * @param image Source image file.
+   * @param filter Name of the filter to apply.
+   * @return Gradient magnitude map.
+   * @throws IOException If the selected image could not be read.
+   */
+  private GradientMap getGradientMap(File image, String filter) throws IOException {
+    long modified = image.lastModified();
+
+    if (gradientMap != null && image.equals(gradientImage) && modified == gradientImageModified && filter.equals(gradientFilter)) {
+      return gradientMap;
+    }
+
+    BufferedImage source = imageCache.read(image);
+    Convolution convolution;
+
+    if (filter.equals("Sobel")) {
+      Sobel sobel = new Sobel(source);
+      sobel.setShared(true);
+      sobel.applySobel();
+      convolution = sobel;
+    } else if (filter.equals("Prewitt")) {
+      Prewitt prewitt = new Prewitt(source);
+      prewitt.setShared(true);
+      prewitt.applyPrewitt();
+      convolution = prewitt;
+    } else {
+      Roberts roberts = new Roberts(source);
+      roberts.setShared(true);
+      roberts.applyRoberts();
+      convolution = roberts;
+    }
+
+    gradientMap = GradientMap.of(convolution);
+    gradientImage = image;
+    gradientImageModified = modified;
+    gradientFilter = filter;
+
+    return gradientMap;
+  }
+
   {
 // GUI initializer generated by IntelliJ IDEA GUI Designer
 // >>> IMPORTANT!! <<<
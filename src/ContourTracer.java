@@ -0,0 +1,190 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Vectorization by edge tracing, the alternative to the four direction scan of {@link Vectorization}. The white
+ * pixels of a thresholded gradient are edges a few pixels wide rather than regions, so the edges are followed along
+ * their pixels instead of around their borders, which would outline every edge twice.
+ *
+ * The bitmap is read in a single pass, in the order of the scan. Every white pixel found starts a chain, which is
+ * followed from neighbor to neighbor, going on in the direction of the previous step whenever possible. The pixels
+ * are cleared as they are visited, together with their neighbors also next to the following pixel: those make the
+ * edge wider but do not change its course, and clearing them leaves a single chain per edge where the scan starts a
+ * segment of its own from each of them. Every pixel is thus visited once, looking at its 8 neighbors at most twice.
+ *
+ * The chains are returned as polylines, the points in the middle of straight runs being dropped.
+ */
+final class ContourTracer {
+  /**
+   * Offsets of the 8 neighbors, clockwise from the right one, so that direction d + 1 and d - 1 (modulo 8) are the
+   * closest ones to direction d.
+   */
+  private static final int[] DX = { 1, 1, 0, -1, -1, -1, 0, 1 };
+  private static final int[] DY = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+  private final Bitmap pixels;
+  private final int width, height, firstRow;
+
+  private ContourTracer(Bitmap pixels, int firstRow) {
+    this.pixels = pixels;
+    this.width = pixels.getWidth();
+    this.height = pixels.getHeight();
+    this.firstRow = firstRow;
+  }
+
+  /**
+   * Trace the edges of a bitmap. As in the scan, the pixels of the first column and of the rows before the first row
+   * are left out.
+   * @param pixels Bitmap whose pixels are cleared as they are traced.
+   * @param firstRow First row traced.
+   * @return Traced edges, isolated pixels being dropped.
+   */
+  public static Polylines trace(Bitmap pixels, int firstRow) {
+    ContourTracer tracer = new ContourTracer(pixels, Math.max(0, firstRow));
+    Polylines polylines = new Polylines(256);
+    Polylines.Chain chain = new Polylines.Chain();
+    int height = tracer.height;
+    int words = (height + 63) >>> 6;
+    int i, j, w;
+
+    if(tracer.firstRow >= height) {
+      return polylines;
+    }
+
+    for(i = 1; i < tracer.width; i++) {
+      for(w = tracer.firstRow >>> 6; w < words; w++) {
+        long word = pixels.getWord(i, w);
+
+        if(w == tracer.firstRow >>> 6) {
+          word &= -1L << tracer.firstRow;
+        }
+
+        while(word != 0) {
+          j = (w << 6) + Long.numberOfTrailingZeros(word);
+
+          if(j >= height) {
+            break;
+          }
+
+          pixels.clear(i, j);
+          chain.clear();
+          chain.add(i, j);
+
+          // The chain is followed from the pixel, then from the pixel the other way.
+          tracer.follow(chain);
+          chain.reverse();
+          tracer.follow(chain);
+
+          if(chain.size > 1) {
+            Polylines.simplify(chain, 0, polylines);
+          }
+
+          // Following the chain may have cleared pixels of the word: read it again, past the current pixel.
+          word = pixels.getWord(i, w) & (-2L << j);
+        }
+      }
+    }
+
+    return polylines;
+  }
+
+  /**
+   * Extend the chain from its last point as long as one of its neighbors is white.
+   */
+  private void follow(Polylines.Chain chain) {
+    int x = chain.xs[chain.size - 1], y = chain.ys[chain.size - 1];
+    int direction = -1;
+
+    if(chain.size > 1) {
+      direction = direction(x - chain.xs[chain.size - 2], y - chain.ys[chain.size - 2]);
+    }
+
+    while(true) {
+      int next = this.next(x, y, direction);
+
+      if(next < 0) {
+        return;
+      }
+
+      int nx = x + DX[next], ny = y + DY[next];
+      int d;
+
+      // Neighbors of the pixel also next to the following one only widen the edge.
+      for(d = 0; d < 8; d++) {
+        int ax = x + DX[d], ay = y + DY[d];
+
+        if(Math.abs(ax - nx) <= 1 && Math.abs(ay - ny) <= 1 && this.isWhite(ax, ay)) {
+          this.pixels.clear(ax, ay);
+        }
+      }
+
+      chain.add(nx, ny);
+      x = nx;
+      y = ny;
+      direction = next;
+    }
+  }
+
+  /**
+   * @param direction Direction of the previous step, -1 if there are none.
+   * @return Direction of the white neighbor closest to the previous direction, -1 if there are none.
+   */
+  private int next(int x, int y, int direction) {
+    int k;
+
+    if(direction < 0) {
+      for(k = 0; k < 8; k++) {
+        if(this.isWhite(x + DX[k], y + DY[k])) {
+          return k;
+        }
+      }
+      return -1;
+    }
+
+    // Straight on first, then turning more and more, but never back.
+    for(k = 0; k < 7; k++) {
+      int d = (direction + ((k & 1) == 0 ? k >> 1 : -((k + 1) >> 1)) + 8) & 7;
+
+      if(this.isWhite(x + DX[d], y + DY[d])) {
+        return d;
+      }
+    }
+
+    return -1;
+  }
+
+  private boolean isWhite(int x, int y) {
+    return x >= 1 && x < this.width && y >= this.firstRow && y < this.height && this.pixels.get(x, y);
+  }
+
+  private static int direction(int dx, int dy) {
+    int d;
+
+    for(d = 0; d < 8; d++) {
+      if(DX[d] == dx && DY[d] == dy) {
+        return d;
+      }
+    }
+
+    throw new IllegalArgumentException("Not a neighbor offset: " + dx + ", " + dy);
+  }
+}
@@ -20,7 +20,8 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 import java.awt.image.BufferedImage;
-import java.awt.Color;
+import java.util.Locale;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Abstract mother class for all supported convolution filters users can apply to a source image.
@@ -43,6 +44,90 @@ abstract class Convolution extends Kernel{
    */
   private int matrixSize;
 
+  /**
+   * Supported filter matrix sizes.
+   */
+  static final int MIN_MATRIX_SIZE = 2, MAX_MATRIX_SIZE = 7;
+
+  /**
+   * Whether the filter responses may exceed the range squares can be computed in without overflowing, in which case
+   * they are saturated first.
+   * @see Convolution#convolveTaps(int[], int[], int, int, int, int, int)
+   */
+  private boolean saturating;
+
+  /**
+   * Two-pass form of the filter matrices or null when they are not separable.
+   * @see SeparableKernel
+   */
+  private SeparableKernel separable;
+
+  /**
+   * Number of threads convolving the image (1 keeps the whole work on the calling thread).
+   * @see Workers
+   */
+  private int parallelism = Workers.DEFAULT_PARALLELISM;
+
+  /**
+   * Bands are not split any further below this number of rows.
+   */
+  private static final int MIN_BAND_ROWS = 32;
+
+  /**
+   * Whether grayscale conversion, filtering and thresholding are fused in a single pass.
+   * @see Convolution#processFused()
+   */
+  private boolean fused;
+
+  /**
+   * Whether the image held is already thresholded by the fused pass.
+   */
+  private boolean thresholded;
+
+  /**
+   * Whether the fused pass only builds the packed bitmap when it thresholds, leaving the image untouched.
+   * @see Convolution#setBitmapOnly(boolean)
+   */
+  private boolean bitmapOnly;
+
+  /**
+   * Rows the filtering and thresholding are reported for, 0 for all the rows of the image.
+   * @see Convolution#setReportedRows(int)
+   */
+  private int reportedRows;
+
+  /**
+   * Black and white result of the last thresholding, packed one bit per pixel.
+   */
+  private Bitmap bitmap;
+
+  /**
+   * Gradient magnitude computed by the last (not fused) run of the filter.
+   */
+  private int[] gradient;
+
+  /**
+   * Number of rows read from the source image at once by the fused pass.
+   */
+  private static final int FUSED_BLOCK_ROWS = 64;
+
+  /**
+   * How the X and Y responses are combined into the gradient magnitude.
+   */
+  private Magnitude magnitude = Magnitude.EXACT;
+
+  /**
+   * Filter name reported by the telemetry.
+   * @see #getName()
+   */
+  private String name;
+
+  /**
+   * SIMD implementation of the filter windows, or null to use the scalar loops only.
+   * @see VectorEngine
+   */
+  protected static final VectorEngine VECTOR = VectorEngine.load();
+
   /**
    * Create new convolution filter instace based on provided source image and filter matrix size.
    * @param source Source image to apply filter(s) to.
@@ -50,6 +135,7 @@ abstract class Convolution extends Kernel{
    */
   public Convolution(BufferedImage source, int matrixSize) {
     super(source);
+    checkMatrixSize(matrixSize);
     this.matrixSize = matrixSize;
     this.filterX = new int[matrixSize][matrixSize];
     this.filterY = new int[matrixSize][matrixSize];
@@ -67,83 +153,619 @@ abstract class Convolution extends Kernel{
    */
   public Convolution(BufferedImage source, int threshold, int matrixSize) {
     super(source);
+    checkMatrixSize(matrixSize);
     this.matrixSize = matrixSize;
     this.filterX = new int[matrixSize][matrixSize];
     this.filterY = new int[matrixSize][matrixSize];
     this.threshold = threshold;
   }
 
+  private static void checkMatrixSize(int matrixSize) {
+    if(matrixSize < MIN_MATRIX_SIZE || matrixSize > MAX_MATRIX_SIZE) {
+      throw new IllegalArgumentException("Filter matrix size must be in range " + MIN_MATRIX_SIZE + " - " +
+        MAX_MATRIX_SIZE + ", got " + matrixSize);
+    }
+  }
+
   /**
-   * Setter for filter matrices (X and Y axis).
+   * Create a filter by name.
+   * @param name Filter name (sobel, prewitt, roberts, scharr or laplacian, case insensitive).
+   * @param source Source image to apply the filter to.
+   * @param threshold Black and white threshold value.
+   * @return New filter.
+   */
+  public static Convolution create(String name, BufferedImage source, int threshold) {
+    Convolution filter;
+
+    switch(name.toLowerCase(Locale.ROOT)) {
+      case "sobel":
+        filter = new Sobel(source, threshold);
+        break;
+      case "prewitt":
+        filter = new Prewitt(source, threshold);
+        break;
+      case "roberts":
+        filter = new Roberts(source, threshold);
+        break;
+      case "scharr":
+        filter = CustomFilter.scharr(source, threshold);
+        break;
+      case "laplacian":
+        filter = CustomFilter.laplacian(source, threshold);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown filter " + name);
+    }
+
+    filter.name = name.toLowerCase(Locale.ROOT);
+    return filter;
+  }
+
+  /**
+   * Get the matrix size of a filter without creating it, e. g. to know how many rows its windows read.
+   * @param name Filter name, as accepted by {@link #create(String, BufferedImage, int)}.
+   * @return Size of the filter matrix.
+   * @throws IllegalArgumentException If the filter name is unknown.
+   */
+  public static int matrixSize(String name) {
+    switch(name.toLowerCase(Locale.ROOT)) {
+      case "roberts":
+        return 2;
+      case "sobel":
+      case "prewitt":
+      case "scharr":
+      case "laplacian":
+        return 3;
+      default:
+        throw new IllegalArgumentException("Unknown filter " + name);
+    }
+  }
+
+  /**
+   * @return The name the filter was created by, or the lower case name of its class.
+   * @see #create(String, BufferedImage, int)
+   */
+  public String getName() {
+    return this.name != null ? this.name : this.getClass().getSimpleName().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Set the matrices of the filter without applying it, e. g. to run it on pixels not coming from an image.
+   */
+  public abstract void setFilterMatrices();
+
+  /**
+   * Set the matrices of the filter and apply it (e. g. {@link Sobel#applySobel()} for the Sobel filter).
+   */
+  public void applyFilter() {
+    this.setFilterMatrices();
+    this.processImage();
+  }
+
+  /**
+   * Setter for filter matrices (X and Y axis). Weight [i][j] of a matrix applies to the pixel i rows below and
+   * j columns right of the pixel the result is stored at.
    * @param filterX X-axis filter matrix.
    * @param filterY Y-axis filter matrix.
    */
   public void setConvolutionMatrix(int[][] filterX, int[][] filterY) {
+    long sumX = 0, sumY = 0;
     int i, j;
 
     for(i = 0;i < this.matrixSize;i++) {
       for(j = 0;j < this.matrixSize;j++) {
         this.filterX[i][j] = filterX[i][j];
         this.filterY[i][j] = filterY[i][j];
+        sumX += Math.abs((long) filterX[i][j]);
+        sumY += Math.abs((long) filterY[i][j]);
       }
     }
+
+    if(255 * Math.max(sumX, sumY) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Filter matrix weights are too large");
+    }
+
+    // Below 2^15, both squared responses add up without overflowing.
+    this.saturating = 255 * Math.max(sumX, sumY) >= 1 << 15;
+    this.separable = this.saturating ? null : SeparableKernel.of(this.filterX, this.filterY);
+  }
+
+  protected int getMatrixSize() {
+    return this.matrixSize;
+  }
+
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * Set the number of threads used to convolve the image. The result does not depend on it.
+   * @param parallelism Number of threads, 1 to convolve on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    if(parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public Magnitude getMagnitude() {
+    return this.magnitude;
+  }
+
+  /**
+   * Choose how the X and Y responses are combined into the gradient magnitude.
+   * @param magnitude Magnitude mode, {@link Magnitude#EXACT} by default.
+   * @see Magnitude
+   */
+  public void setMagnitude(Magnitude magnitude) {
+    if(magnitude == null) {
+      throw new IllegalArgumentException("Magnitude mode must not be null");
+    }
+    this.magnitude = magnitude;
+  }
+
+  /**
+   * @return Gradient magnitude in row-major order computed by the last run of {@link #processImage()}, or null if
+   * the filter was not applied yet or was applied by the fused pass.
+   */
+  public int[] getGradient() {
+    return this.gradient;
+  }
+
+  public boolean isFused() {
+    return this.fused;
+  }
+
+  /**
+   * Choose whether {@link #processImage()} runs the separate grayscale, filtering and thresholding passes or the
+   * fused one. Both give the same image, except for color models which cannot store the intermediate grayscale
+   * image exactly (e. g. 16 bit RGB), where the fused pass works from the unrounded gray levels.
+   * @param fused True to use the fused pass.
+   * @see Convolution#processFused()
+   */
+  public void setFused(boolean fused) {
+    this.fused = fused;
+  }
+
+  public boolean isBitmapOnly() {
+    return this.bitmapOnly;
+  }
+
+  /**
+   * Choose whether the fused pass, when it thresholds, writes the black and white result to the image as well as to
+   * the packed bitmap. Callers only using {@link #getBitmap()} skip writing the image, which is then left as it is.
+   * @param bitmapOnly True to only build the bitmap.
+   */
+  public void setBitmapOnly(boolean bitmapOnly) {
+    this.bitmapOnly = bitmapOnly;
+  }
+
+  public int getReportedRows() {
+    return this.reportedRows;
+  }
+
+  /**
+   * Choose how many rows of the image the filtering and thresholding are reported to {@link Telemetry} for. Images holding rows which
+   * are only read by the filter window, their result being computed elsewhere, report the other ones only, so that
+   * every pixel is counted once.
+   * @param reportedRows Number of top rows reported, 0 for all the rows of the image.
+   */
+  public void setReportedRows(int reportedRows) {
+    this.reportedRows = reportedRows;
   }
 
   /**
    * Apply selected filter (depending on the child class calling the method) to source image
    * using provided filter matrices.
+   *
+   * The gray levels are kept in a single row-major buffer and the gradient is written to a second buffer, so
+   * every output pixel only depends on the source pixels and not on the order rows are processed in.
    */
   @Override
   public void processImage() {
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.CONVOLUTION);
+
+    if(this.fused) {
+      this.processFused();
+    }
+    else {
+      this.processSeparately();
+    }
+
+    span.size(this.getImage().getWidth(), this.getReportedHeight()).filter(this.getName(), this.threshold).end();
+  }
+
+  /**
+   * @return Number of rows of the image reported to {@link Telemetry}.
+   * @see #setReportedRows(int)
+   */
+  private int getReportedHeight() {
+    int height = this.getImage().getHeight();
+    return this.reportedRows > 0 ? Math.min(this.reportedRows, height) : height;
+  }
+
+  /**
+   * Grayscale conversion and filtering in passes of their own, the gradient magnitude being kept.
+   */
+  private void processSeparately() {
     int width = this.getImage().getWidth();
     int height = this.getImage().getHeight();
-    int i, j;
-    int[][] pixels = new int[width][height];
+    int[] pixels = new int[width * height];
+    int[] gradient = new int[width * height];
 
     this.convertToGrayscale();
 
     BufferedImage temp = this.getImage();
 
-    for(i = 0; i < width; i++) {
-      for(j = 0; j < height; j++) {
-        Color color = new Color(this.getImage().getRGB(i, j));
-        pixels[i][j] = color.getRed();
+    RasterAccess.readRed(temp, pixels);
+
+    this.convolveAll(pixels, gradient, width, height, -1);
+
+    RasterAccess.writeGray(temp, gradient);
+
+    this.thresholded = false;
+    this.bitmap = null;
+    this.gradient = gradient;
+    this.setImage(temp);
+  }
+
+  /**
+   * Grayscale conversion, filtering and thresholding (if a valid threshold is set) in a single pass over the
+   * source image. Gray levels are computed on the fly for a rolling window of rows, which is convolved and
+   * written straight back to the image as gradient magnitude or black and white pixels. The last rows of each
+   * window are kept as the top of the next one, so every source pixel is read once and every output pixel is
+   * written once. The image is then already thresholded and {@link #applyThreshold()} has nothing left to do.
+   * A shared image is not modified, the result goes to a new image instead. In bitmap only mode, the black and
+   * white result only goes to the packed bitmap.
+   */
+  protected void processFused() {
+    BufferedImage source = this.getImage();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int halo = this.matrixSize - 1;
+    int blockRows = this.getBlockRows();
+    int[] window = new int[(blockRows + halo) * width];
+    int[] gradient = new int[window.length];
+    boolean binary = this.threshold >= 0 && this.threshold <= 255;
+    Bitmap bitmap = binary ? new Bitmap(width, height) : null;
+    BufferedImage temp = binary && this.bitmapOnly ? null : this.getWritableImage();
+    int fromRow, filled = 0;
+
+    for(fromRow = 0; fromRow < height; fromRow += blockRows) {
+      int windowRows = Math.min(blockRows + halo, height - fromRow);
+      int rows = Math.min(blockRows, height - fromRow);
+
+      Workers.checkInterrupted();
+      RasterAccess.readAverage(source, fromRow + filled, fromRow + windowRows, window, filled * width);
+
+      if(binary) {
+        this.convolveThresholded(window, gradient, width, windowRows);
+      }
+      else {
+        this.convolveAll(window, gradient, width, windowRows, -1);
+      }
+
+      if(binary) {
+        if(temp != null) {
+          RasterAccess.writeBinary(temp, fromRow, fromRow + rows, gradient, 0, this.threshold);
+        }
+        bitmap.setRows(fromRow, fromRow + rows, gradient, 0, this.threshold);
       }
+      else {
+        RasterAccess.writeGray(temp, fromRow, fromRow + rows, gradient, 0);
+      }
+
+      // Keep the halo rows already read as the top of the next window.
+      filled = windowRows - rows;
+      System.arraycopy(window, rows * width, window, 0, filled * width);
     }
 
-    for(i = 0; i < (width - 2); i++) {
-      for (j = 0; j < (height - 2); j++) {
-        int pixelX = (pixels[i][j] * this.filterX[0][0]) + (pixels[i + 1][j] * this.filterX[0][1]) + (pixels[i + 2][j] * this.filterX[0][2]) +
-          (pixels[i][j + 1] * this.filterX[1][0]) + (pixels[i + 1][j + 1] * this.filterX[1][1]) + (pixels[i + 2][j + 1] * this.filterX[1][2]) +
-          (pixels[i][j + 2] * this.filterX[2][0]) + (pixels[i + 1][j + 2] * this.filterX[2][1]) + (pixels[i + 2][j + 2] * this.filterX[2][2]);
+    this.thresholded = binary;
+    this.bitmap = bitmap;
+    this.gradient = null;
 
-        int pixelY = (pixels[i][j] * this.filterY[0][0]) + (pixels[i + 1][j] * this.filterY[0][1]) + (pixels[i + 2][j] * this.filterY[0][2]) +
-          (pixels[i][j + 1] * this.filterY[1][0]) + (pixels[i + 1][j + 1] * this.filterY[1][1]) + (pixels[i + 2][j + 1] * this.filterY[1][2]) +
-          (pixels[i][j + 2] * this.filterY[2][0]) + (pixels[i + 1][j + 2] * this.filterY[2][1]) + (pixels[i + 2][j + 2] * this.filterY[2][2]);
+    if(temp != null) {
+      this.setImage(temp);
+    }
+  }
 
-        int pixel = (int) Math.sqrt(pixelX * pixelX + pixelY * pixelY);
+  /**
+   * @return Number of rows convolved at once: enough for every thread to get a couple of bands.
+   */
+  private int getBlockRows() {
+    return Math.max(FUSED_BLOCK_ROWS, this.parallelism == 1 ? 0 : 2 * MIN_BAND_ROWS * this.parallelism);
+  }
 
-        if(pixel < 0) {
-          pixels[i][j] = 0;
-        }
-        else if(pixel > 255) {
-          pixels[i][j] = 255;
-        }
-        else {
-          pixels[i][j] = pixel;
+  /**
+   * Convolve the whole image by blocks of rows, splitting each block into bands convolved in parallel when allowed
+   * to. Every band reads the rows following it (the halo) from the shared gray level buffer and writes only its own
+   * rows of the gradient buffer, so the result is the same as the one of the sequential run. The work stops between
+   * two blocks once the calling thread is interrupted.
+   * @param pixels Gray levels in row-major order.
+   * @param gradient Output buffer in row-major order.
+   * @param width Image width.
+   * @param height Image height.
+   * @param squaredThreshold Squared threshold to output black and white pixels, or -1 to output the magnitude.
+   * @see #convolveThresholded(int[], int[], int, int)
+   */
+  protected void convolveAll(int[] pixels, int[] gradient, int width, int height, int squaredThreshold) {
+    int blockRows = this.getBlockRows();
+    int fromRow;
+
+    for(fromRow = 0; fromRow < height; fromRow += blockRows) {
+      int toRow = Math.min(height, fromRow + blockRows);
+
+      Workers.checkInterrupted();
+
+      if(this.parallelism == 1 || toRow - fromRow < 2 * MIN_BAND_ROWS) {
+        this.convolve(pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+      }
+      else {
+        int grain = Math.max(MIN_BAND_ROWS, (toRow - fromRow) / (4 * this.parallelism));
+        Workers.invoke(new Band(pixels, gradient, width, height, fromRow, toRow, grain, squaredThreshold),
+          this.parallelism);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #convolveAll(int[], int[], int, int, int)} when only the black and white result is needed: with an
+   * exact magnitude mode, filtered pixels are set to 255 or 0 by comparing their squared responses with the squared
+   * threshold, without computing any square root. Pixels too close to the edges keep their gray level as usual, so
+   * thresholding the output again gives the same image as thresholding the gradient magnitude.
+   * @param pixels Gray levels in row-major order.
+   * @param gradient Output buffer in row-major order.
+   * @param width Image width.
+   * @param height Image height.
+   */
+  protected void convolveThresholded(int[] pixels, int[] gradient, int width, int height) {
+    boolean squared = this.magnitude.isExact() && this.threshold >= 0 && this.threshold <= 255;
+
+    this.convolveAll(pixels, gradient, width, height, squared ? Magnitude.squaredThreshold(this.threshold) : -1);
+  }
+
+  /**
+   * Band of rows to convolve, split in halves until it is small enough.
+   */
+  @SuppressWarnings("serial")
+  private class Band extends RecursiveAction {
+    private final int[] pixels, gradient;
+    private final int width, height, fromRow, toRow, grain, squaredThreshold;
+
+    Band(int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow, int grain,
+         int squaredThreshold) {
+      this.pixels = pixels;
+      this.gradient = gradient;
+      this.width = width;
+      this.height = height;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.grain = grain;
+      this.squaredThreshold = squaredThreshold;
+    }
+
+    @Override
+    protected void compute() {
+      if(this.toRow - this.fromRow <= this.grain) {
+        convolve(this.pixels, this.gradient, this.width, this.height, this.fromRow, this.toRow,
+          this.squaredThreshold);
+        return;
+      }
+
+      int middle = (this.fromRow + this.toRow) >>> 1;
+      invokeAll(new Band(this.pixels, this.gradient, this.width, this.height, this.fromRow, middle, this.grain,
+          this.squaredThreshold),
+        new Band(this.pixels, this.gradient, this.width, this.height, middle, this.toRow, this.grain,
+          this.squaredThreshold));
+    }
+  }
+
+  /**
+   * Compute the gradient magnitude for a band of rows. The result of each filter window is stored at the position
+   * of its top left pixel. Pixels too close to the right or bottom edge for a full window keep their gray level.
+   *
+   * Each matrix size has its own loop, so that the JIT compiles the common ones to tight code: 2x2 and 3x3 windows
+   * are fully unrolled (and handed over to the Vector API when it is available), separable matrices are applied in
+   * two passes and the other ones go through the list of their non-zero weights.
+   * @param pixels Gray levels in row-major order.
+   * @param gradient Output buffer in row-major order.
+   * @param width Image width.
+   * @param height Image height.
+   * @param fromRow First row of the band.
+   * @param toRow Row following the last row of the band.
+   * @param squaredThreshold Squared threshold to output black and white pixels, or -1 to output the magnitude.
+   */
+  protected void convolve(int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow,
+                          int squaredThreshold) {
+    if(this.saturating) {
+      this.convolveTaps(pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+    }
+    else if(this.matrixSize == 2) {
+      this.convolve2(pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+    }
+    else if(this.matrixSize == 3 && (VECTOR != null || this.separable == null)) {
+      this.convolve3(pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+    }
+    else if(this.separable != null) {
+      this.separable.convolve(this, pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+    }
+    else {
+      this.convolveTaps(pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+    }
+  }
+
+  /**
+   * Unrolled 2x2 window.
+   */
+  private void convolve2(int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow,
+                         int squaredThreshold) {
+    int fx00 = this.filterX[0][0], fx01 = this.filterX[0][1], fx10 = this.filterX[1][0], fx11 = this.filterX[1][1];
+    int fy00 = this.filterY[0][0], fy01 = this.filterY[0][1], fy10 = this.filterY[1][0], fy11 = this.filterY[1][1];
+    int[] windowX = { fx00, fx01, fx10, fx11 };
+    int[] windowY = { fy00, fy01, fy10, fy11 };
+    int x, y;
+
+    for(y = fromRow; y < toRow; y++) {
+      int row = y * width;
+
+      if(y >= height - 1) {
+        System.arraycopy(pixels, row, gradient, row, width);
+        continue;
+      }
+
+      x = VECTOR == null ? 0 :
+        VECTOR.convolveRow(pixels, gradient, row, width, 2, windowX, windowY, this.magnitude, squaredThreshold);
+
+      for(; x < width - 1; x++) {
+        int p0 = row + x, p1 = p0 + width;
+
+        int pixelX = (pixels[p0] * fx00) + (pixels[p0 + 1] * fx01) +
+          (pixels[p1] * fx10) + (pixels[p1 + 1] * fx11);
+
+        int pixelY = (pixels[p0] * fy00) + (pixels[p0 + 1] * fy01) +
+          (pixels[p1] * fy10) + (pixels[p1 + 1] * fy11);
+
+        gradient[p0] = this.magnitude(pixelX, pixelY, squaredThreshold);
+      }
+
+      for(; x < width; x++) {
+        gradient[row + x] = pixels[row + x];
+      }
+    }
+  }
+
+  /**
+   * Unrolled 3x3 window.
+   */
+  private void convolve3(int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow,
+                         int squaredThreshold) {
+    int fx00 = this.filterX[0][0], fx01 = this.filterX[0][1], fx02 = this.filterX[0][2];
+    int fx10 = this.filterX[1][0], fx11 = this.filterX[1][1], fx12 = this.filterX[1][2];
+    int fx20 = this.filterX[2][0], fx21 = this.filterX[2][1], fx22 = this.filterX[2][2];
+    int fy00 = this.filterY[0][0], fy01 = this.filterY[0][1], fy02 = this.filterY[0][2];
+    int fy10 = this.filterY[1][0], fy11 = this.filterY[1][1], fy12 = this.filterY[1][2];
+    int fy20 = this.filterY[2][0], fy21 = this.filterY[2][1], fy22 = this.filterY[2][2];
+    int[] windowX = { fx00, fx01, fx02, fx10, fx11, fx12, fx20, fx21, fx22 };
+    int[] windowY = { fy00, fy01, fy02, fy10, fy11, fy12, fy20, fy21, fy22 };
+    int x, y;
+
+    for(y = fromRow; y < toRow; y++) {
+      int row = y * width;
+
+      if(y >= height - 2) {
+        System.arraycopy(pixels, row, gradient, row, width);
+        continue;
+      }
+
+      x = VECTOR == null ? 0 :
+        VECTOR.convolveRow(pixels, gradient, row, width, 3, windowX, windowY, this.magnitude, squaredThreshold);
+
+      for(; x < width - 2; x++) {
+        int p0 = row + x, p1 = p0 + width, p2 = p1 + width;
+
+        int pixelX = (pixels[p0] * fx00) + (pixels[p0 + 1] * fx01) + (pixels[p0 + 2] * fx02) +
+          (pixels[p1] * fx10) + (pixels[p1 + 1] * fx11) + (pixels[p1 + 2] * fx12) +
+          (pixels[p2] * fx20) + (pixels[p2 + 1] * fx21) + (pixels[p2 + 2] * fx22);
+
+        int pixelY = (pixels[p0] * fy00) + (pixels[p0 + 1] * fy01) + (pixels[p0 + 2] * fy02) +
+          (pixels[p1] * fy10) + (pixels[p1 + 1] * fy11) + (pixels[p1 + 2] * fy12) +
+          (pixels[p2] * fy20) + (pixels[p2 + 1] * fy21) + (pixels[p2 + 2] * fy22);
+
+        gradient[p0] = this.magnitude(pixelX, pixelY, squaredThreshold);
+      }
+
+      for(; x < width; x++) {
+        gradient[row + x] = pixels[row + x];
+      }
+    }
+  }
+
+  /**
+   * Window of any size, going through the non-zero weights only. The responses are saturated before being
+   * combined, as those of large matrices could overflow once squared.
+   */
+  private void convolveTaps(int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow,
+                            int squaredThreshold) {
+    int size = this.matrixSize;
+    int[] offsets = new int[size * size];
+    int[] weightsX = new int[offsets.length];
+    int[] weightsY = new int[offsets.length];
+    int i, j, k, taps = 0, x, y;
+
+    for(i = 0; i < size; i++) {
+      for(j = 0; j < size; j++) {
+        if(this.filterX[i][j] != 0 || this.filterY[i][j] != 0) {
+          offsets[taps] = i * width + j;
+          weightsX[taps] = this.filterX[i][j];
+          weightsY[taps] = this.filterY[i][j];
+          taps++;
         }
       }
     }
 
-    for(i = 0; i < width; i++) {
-      for(j = 0; j < height; j++) {
-        Color color = new Color(pixels[i][j], pixels[i][j], pixels[i][j]);
-        int rgb = color.getRGB();
-        temp.setRGB(i, j, rgb);
+    for(y = fromRow; y < toRow; y++) {
+      int row = y * width;
+
+      if(y > height - size) {
+        System.arraycopy(pixels, row, gradient, row, width);
+        continue;
+      }
+
+      for(x = 0; x <= width - size; x++) {
+        int p = row + x;
+        int pixelX = 0, pixelY = 0;
+
+        for(k = 0; k < taps; k++) {
+          int pixel = pixels[p + offsets[k]];
+          pixelX += weightsX[k] * pixel;
+          pixelY += weightsY[k] * pixel;
+        }
+
+        gradient[p] = this.magnitude(saturate(pixelX), saturate(pixelY), squaredThreshold);
+      }
+
+      for(; x < width; x++) {
+        gradient[row + x] = pixels[row + x];
       }
     }
+  }
 
-    this.setImage(temp);
+  /**
+   * Bring a filter response into range -256 - 256. Whatever the magnitude mode, a response out of range -255 - 255
+   * alone gives the magnitude 255, so this does not change the result while preventing the squares from overflowing.
+   */
+  private static int saturate(int response) {
+    return Math.max(-256, Math.min(256, response));
+  }
+
+  /**
+   * Combine the responses of the filter matrices for one pixel.
+   * @param gx X-axis filter response.
+   * @param gy Y-axis filter response.
+   * @param squaredThreshold Squared threshold to output black and white pixels, or -1 to output the magnitude.
+   * @return Gradient magnitude in range 0 - 255, or 255 (white) and 0 (black) when a squared threshold is given.
+   */
+  protected final int magnitude(int gx, int gy, int squaredThreshold) {
+    if(squaredThreshold >= 0) {
+      return Magnitude.isWhite(gx, gy, squaredThreshold) ? 255 : 0;
+    }
+    return this.magnitude.of(gx, gy);
+  }
+
+  /**
+   * Clamp a gradient magnitude to the range of a color component.
+   * @param pixel Gradient magnitude.
+   * @return Value in range 0 - 255.
+   */
+  protected static int clamp(int pixel) {
+    if(pixel < 0) {
+      return 0;
+    }
+    else if(pixel > 255) {
+      return 255;
+    }
+    return pixel;
   }
 
   /**
@@ -152,24 +774,30 @@ abstract class Convolution extends Kernel{
    * the threshold become white.
    */
   public void applyThreshold() {
-    if(this.threshold < 0 || this.threshold > 255)
+    if(this.threshold < 0 || this.threshold > 255 || this.thresholded)
       return;
 
-    int width = this.getImage().getWidth();
-    int height = this.getImage().getHeight();
-    int i, j;
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.THRESHOLD);
     BufferedImage temp = this.getImage();
 
-    for(i = 0; i < width; i++) {
-      for(j = 0; j < height; j++) {
-        Color color = new Color(temp.getRGB(i, j));
-        if(color.getRed() > this.threshold )
-          temp.setRGB(i, j, Color.WHITE.getRGB());
-        else
-          temp.setRGB(i, j, Color.BLACK.getRGB());
-      }
+    if(this.isShared()) {
+      temp = this.getWritableImage();
+      this.getImage().copyData(temp.getRaster());
     }
 
+    RasterAccess.threshold(temp, this.threshold);
+
+    this.bitmap = this.gradient != null ?
+      Bitmap.threshold(this.gradient, temp.getWidth(), temp.getHeight(), this.threshold) : Bitmap.of(temp);
     this.setImage(temp);
+    span.size(temp.getWidth(), this.getReportedHeight()).filter(this.getName(), this.threshold).end();
+  }
+
+  /**
+   * @return The thresholded image packed one bit per pixel, ready for {@link Vectorization#Vectorization(Bitmap)},
+   * or null if the image is not thresholded.
+   */
+  public Bitmap getBitmap() {
+    return this.bitmap;
   }
 }
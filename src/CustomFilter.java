@@ -0,0 +1,104 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.awt.image.BufferedImage;
+
+/**
+ * Filter with user supplied matrices of any supported size (2x2 to 7x7), e. g. the Scharr or Laplacian ones.
+ * A filter with a single matrix (such as the Laplacian) takes a zero Y-axis matrix, its gradient magnitude being
+ * the absolute value of the X-axis response.
+ */
+class CustomFilter extends Convolution {
+  private final int[][] matrixX;
+  private final int[][] matrixY;
+
+  /**
+   * @param source Source image to apply the filter to.
+   * @param threshold Black and white threshold value.
+   * @param filterX X-axis filter matrix.
+   * @param filterY Y-axis filter matrix, of the same size.
+   */
+  public CustomFilter(BufferedImage source, int threshold, int[][] filterX, int[][] filterY) {
+    super(source, threshold, filterX.length);
+    this.matrixX = copy(filterX, filterX.length);
+    this.matrixY = copy(filterY, filterX.length);
+  }
+
+  /**
+   * @return The Scharr filter, a 3x3 derivative with a better rotational symmetry than the Sobel one.
+   */
+  public static CustomFilter scharr(BufferedImage source, int threshold) {
+    int[][] filterX = {
+      { -3, 0, 3 },
+      { -10, 0, 10 },
+      { -3, 0, 3 }
+    };
+    int[][] filterY = {
+      { -3, -10, -3 },
+      { 0, 0, 0 },
+      { 3, 10, 3 }
+    };
+
+    return new CustomFilter(source, threshold, filterX, filterY);
+  }
+
+  /**
+   * @return The 3x3 Laplacian filter, a second derivative.
+   */
+  public static CustomFilter laplacian(BufferedImage source, int threshold) {
+    int[][] filterX = {
+      { 0, 1, 0 },
+      { 1, -4, 1 },
+      { 0, 1, 0 }
+    };
+
+    return new CustomFilter(source, threshold, filterX, new int[3][3]);
+  }
+
+  /**
+   * Copy a matrix, checking it is square and of the expected size.
+   */
+  private static int[][] copy(int[][] matrix, int size) {
+    int[][] copy = new int[size][];
+    int i;
+
+    if(matrix.length != size) {
+      throw new IllegalArgumentException("Filter matrices must have the same size");
+    }
+
+    for(i = 0; i < size; i++) {
+      if(matrix[i].length != size) {
+        throw new IllegalArgumentException("Filter matrices must be square");
+      }
+      copy[i] = matrix[i].clone();
+    }
+
+    return copy;
+  }
+
+  /**
+   * Set filter matrices.
+   */
+  @Override
+  public void setFilterMatrices() {
+    this.setConvolutionMatrix(this.matrixX, this.matrixY);
+  }
+}
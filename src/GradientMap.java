@@ -0,0 +1,91 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.awt.image.BufferedImage;
+
+/**
+ * Gradient magnitude computed by a convolution filter. Keeping it around allows to threshold the same filtered
+ * image with different values without filtering it again.
+ */
+class GradientMap {
+  private final int width;
+  private final int height;
+
+  /**
+   * Gradient magnitude in range 0 - 255 in row-major order.
+   */
+  private final int[] magnitude;
+
+  public GradientMap(int width, int height, int[] magnitude) {
+    this.width = width;
+    this.height = height;
+    this.magnitude = magnitude;
+  }
+
+  /**
+   * Keep the gradient magnitude computed by a filter.
+   * @param filter Filter already applied to its image (not in fused mode).
+   * @return Gradient magnitude map of the filter's image.
+   */
+  public static GradientMap of(Convolution filter) {
+    return new GradientMap(filter.getImage().getWidth(), filter.getImage().getHeight(), filter.getGradient());
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  public int[] getMagnitude() {
+    return this.magnitude;
+  }
+
+  /**
+   * @return The gradient magnitude as a grayscale image.
+   */
+  public BufferedImage toImage() {
+    BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+    RasterAccess.writeGray(image, this.magnitude);
+    return image;
+  }
+
+  /**
+   * @param threshold Black and white threshold value.
+   * @return Black and white image with white pixels where the gradient magnitude is greater than the threshold.
+   * @see Convolution#applyThreshold()
+   */
+  public BufferedImage threshold(int threshold) {
+    BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+    RasterAccess.writeBinary(image, 0, this.height, this.magnitude, 0, threshold);
+    return image;
+  }
+
+  /**
+   * @param threshold Black and white threshold value.
+   * @return Same as {@link #threshold(int)}, packed one bit per pixel.
+   */
+  public Bitmap bitmap(int threshold) {
+    return Bitmap.threshold(this.magnitude, this.width, this.height, threshold);
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of decoded source images with a memory budget, evicting the least recently used images first. Images are
+ * identified by their canonical path, modification time and size, so a file changed on disk is decoded again.
+ *
+ * Returned images are shared by every caller and must never be modified: kernels working on them have to be
+ * marked with {@link Kernel#setShared(boolean)}, which makes them write to a private copy.
+ */
+class ImageCache {
+  /**
+   * Maximum number of bytes of pixel data kept in the cache.
+   */
+  private final long budget;
+
+  /**
+   * Number of bytes of pixel data currently kept in the cache.
+   */
+  private long used;
+
+  /**
+   * Cached images in access order, least recently used first.
+   */
+  private final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * @param budget Maximum number of bytes of pixel data to keep.
+   */
+  public ImageCache(long budget) {
+    this.budget = budget;
+  }
+
+  public long getBudget() {
+    return this.budget;
+  }
+
+  public synchronized long getUsed() {
+    return this.used;
+  }
+
+  /**
+   * Get the decoded content of an image file, decoding it only if it is not cached yet.
+   * @param file Image file.
+   * @return Decoded image, which must not be modified.
+   * @throws IOException If the file could not be read or is not a supported image.
+   */
+  public BufferedImage read(File file) throws IOException {
+    Key key = new Key(file);
+    BufferedImage image;
+
+    synchronized(this) {
+      image = this.images.get(key);
+    }
+
+    if(image != null) {
+      return image;
+    }
+
+    // Decode outside of the lock so that other images can be served meanwhile.
+    Telemetry.Span decode = Telemetry.start(Telemetry.Stage.DECODE);
+    image = ImageIO.read(file);
+
+    if(image == null) {
+      throw new IOException("Unsupported image format: " + file.getName());
+    }
+    decode.size(image.getWidth(), image.getHeight()).end();
+
+    this.put(key, image);
+
+    return image;
+  }
+
+  /**
+   * Forget all the cached images.
+   */
+  public synchronized void clear() {
+    this.images.clear();
+    this.used = 0;
+  }
+
+  private synchronized void put(Key key, BufferedImage image) {
+    long size = sizeOf(image);
+
+    if(size > this.budget) {
+      return;
+    }
+
+    BufferedImage previous = this.images.put(key, image);
+
+    if(previous != null) {
+      this.used -= sizeOf(previous);
+    }
+    this.used += size;
+
+    Iterator<Map.Entry<Key, BufferedImage>> eldest = this.images.entrySet().iterator();
+    while(this.used > this.budget && eldest.hasNext()) {
+      Map.Entry<Key, BufferedImage> entry = eldest.next();
+      this.used -= sizeOf(entry.getValue());
+      eldest.remove();
+    }
+  }
+
+  /**
+   * @param image Image.
+   * @return Number of bytes of pixel data held by the image.
+   */
+  static long sizeOf(BufferedImage image) {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+
+  /**
+   * Identity of an image file at a given time.
+   */
+  private static final class Key {
+    private final String path;
+    private final long modified;
+    private final long length;
+
+    Key(File file) throws IOException {
+      this.path = file.getCanonicalPath();
+      this.modified = file.lastModified();
+      this.length = file.length();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if(!(other instanceof Key)) {
+        return false;
+      }
+
+      Key key = (Key) other;
+      return this.path.equals(key.path) && this.modified == key.modified && this.length == key.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return (this.path.hashCode() * 31 + Long.hashCode(this.modified)) * 31 + Long.hashCode(this.length);
+    }
+  }
+}
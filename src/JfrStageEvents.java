@@ -0,0 +1,102 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Pipeline stages recorded as {@code jed.Stage} flight recorder events, e. g. with
+ * {@code java -XX:StartFlightRecording=filename=jed.jfr Main}. Events are only allocated while a recording wants
+ * them, the call sites costing a check of the recorder state otherwise.
+ */
+final class JfrStageEvents implements StageEvents {
+  @Name("jed.Stage")
+  @Label("Pipeline Stage")
+  @Category("JED")
+  @Description("Decoding, grayscale conversion, filtering, thresholding, vectorization or writing of an image")
+  @StackTrace(false)
+  static final class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Filter")
+    String filter;
+
+    @Label("Threshold")
+    int threshold;
+
+    @Label("Segments")
+    long segments;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytes;
+  }
+
+  /**
+   * Type of the events, telling whether a recording wants them before any is allocated.
+   */
+  private static final EventType TYPE = EventType.getEventType(StageEvent.class);
+
+  @Override
+  public Object begin() {
+    if(!TYPE.isEnabled()) {
+      return null;
+    }
+
+    StageEvent event = new StageEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void commit(Object event, String stage, int width, int height, String filter, int threshold, long segments,
+                     long bytes) {
+    StageEvent stageEvent = (StageEvent) event;
+
+    stageEvent.end();
+
+    if(!stageEvent.shouldCommit()) {
+      return;
+    }
+
+    stageEvent.stage = stage;
+    stageEvent.width = width;
+    stageEvent.height = height;
+    stageEvent.filter = filter;
+    stageEvent.threshold = threshold;
+    stageEvent.segments = segments;
+    stageEvent.bytes = bytes;
+    stageEvent.commit();
+  }
+}
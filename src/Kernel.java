@@ -31,12 +31,43 @@ abstract class Kernel {
    */
   private BufferedImage image;
 
+  /**
+   * Whether the image is shared with someone else (e. g. {@link ImageCache}) and must not be modified. The first
+   * operation writing to a shared image writes to a private copy instead.
+   */
+  private boolean shared;
+
   public Kernel(BufferedImage source) {
     this.image = source;
   }
 
+  /**
+   * Set the image to work on. The image is considered as owned by the kernel.
+   * @param image New image.
+   */
   public void setImage(BufferedImage image) {
     this.image = image;
+    this.shared = false;
+  }
+
+  public boolean isShared() {
+    return this.shared;
+  }
+
+  /**
+   * Mark the image as shared, so that it is copied on first write instead of being modified in place.
+   * @param shared True if the image must not be modified.
+   */
+  public void setShared(boolean shared) {
+    this.shared = shared;
+  }
+
+  /**
+   * @return An image the kernel may write its whole result to: the image itself, or a blank image of the same
+   * type if the image is shared.
+   */
+  protected BufferedImage getWritableImage() {
+    return this.shared ? RasterAccess.createCompatible(this.image) : this.image;
   }
 
   public BufferedImage getImage() {
@@ -44,32 +75,18 @@ abstract class Kernel {
   }
 
   /**
-   * Converts source image to grayscale.
+   * Converts source image to grayscale. A shared image is left untouched and replaced by its converted copy.
+   * @see RasterAccess#toGrayscale(BufferedImage, BufferedImage)
    */
   public void convertToGrayscale()
   {
-    int width = this.image.getWidth();
-    int height = this.image.getHeight();
-
-    BufferedImage temp = this.image;
-
-    for(int i = 0; i < width; i++) {
-      for(int j = 0; j < height; j++) {
-        int pixel = temp.getRGB(i, j);
-        int alpha = (pixel >> 24) & 0xFF;
-        int red = (pixel >> 16) & 0xFF;
-        int green = (pixel >> 8) & 0xFF;
-        int blue = pixel & 0xFF;
-
-        int average = (red + green + blue) / 3;
-
-        pixel = (alpha << 24) | (average << 16) | (average << 8) | average;
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.GRAYSCALE);
+    BufferedImage temp = this.getWritableImage();
 
-        temp.setRGB(i, j, pixel);
-      }
-    }
+    RasterAccess.toGrayscale(this.image, temp);
 
     this.setImage(temp);
+    span.size(temp.getWidth(), temp.getHeight()).end();
   }
 
   /**
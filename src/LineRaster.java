@@ -0,0 +1,270 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Black 1 pixel wide lines drawn straight into the pixel array of an image with the Bresenham algorithm, without
+ * going through Java2D for every line. The pixels set are exactly the ones {@link Graphics2D#drawLine(int, int, int,
+ * int)} sets with the default rendering hints: the error starts at minus the major length and a minor step is taken
+ * as soon as it is no longer negative, whatever the direction of the line.
+ *
+ * Large sets of lines are drawn in parallel by horizontal bands of the image, each band drawing the part of the lines
+ * crossing it, so no pixel is written by two threads. Images whose layout is not a packed integer one are drawn
+ * through Java2D.
+ */
+final class LineRaster {
+  /**
+   * Lines below which the drawing is not worth splitting into bands.
+   */
+  private static final int PARALLEL_LINES = 1 << 15;
+
+  private LineRaster() {
+  }
+
+  /**
+   * Draw segments.
+   * @param image Image to draw on.
+   * @param segments Segments to draw.
+   * @param indexes Indexes of the segments to draw, or null to draw all of them.
+   * @param clip Region of the image drawn.
+   * @param parallelism Number of threads drawing, 1 to draw on the calling thread.
+   */
+  static void draw(BufferedImage image, SegmentStore segments, int[] indexes, Rectangle clip, int parallelism) {
+    RasterAccess.Layout layout = RasterAccess.layoutOf(image);
+    Rectangle region = clip.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+    int count = indexes != null ? indexes.length : segments.size();
+
+    if(region.isEmpty() || count == 0) {
+      return;
+    }
+
+    if(layout != RasterAccess.Layout.INT_ARGB && layout != RasterAccess.Layout.INT_RGB) {
+      drawGeneric(image, segments, indexes, region);
+      return;
+    }
+
+    int[] pixels = RasterAccess.ints(image);
+    int bands = count < PARALLEL_LINES ? 1 : Math.min(parallelism, region.height);
+
+    if(bands <= 1) {
+      new Band(pixels, image.getWidth(), segments, indexes, region).compute();
+      return;
+    }
+
+    List<Band> tasks = new ArrayList<>(bands);
+    int b;
+
+    for(b = 0; b < bands; b++) {
+      int from = region.y + (int) ((long) region.height * b / bands);
+      int to = region.y + (int) ((long) region.height * (b + 1) / bands);
+      Rectangle band = new Rectangle(region.x, from, region.width, to - from);
+      tasks.add(new Band(pixels, image.getWidth(), segments, indexes, band));
+    }
+
+    Workers.invoke(new Bands(tasks), parallelism);
+  }
+
+  private static void drawGeneric(BufferedImage image, SegmentStore segments, int[] indexes, Rectangle region) {
+    Graphics2D drawing = image.createGraphics();
+    int count = indexes != null ? indexes.length : segments.size();
+    int i;
+
+    try {
+      drawing.setColor(Color.BLACK);
+      drawing.setClip(region);
+
+      for(i = 0; i < count; i++) {
+        int s = indexes != null ? indexes[i] : i;
+        drawing.drawLine(segments.getX1(s), segments.getY1(s), segments.getX2(s), segments.getY2(s));
+      }
+    } finally {
+      drawing.dispose();
+    }
+  }
+
+  /**
+   * Lines drawn in a region of the image.
+   */
+  @SuppressWarnings("serial")
+  private static class Band extends RecursiveAction {
+    /**
+     * Opaque black, in both packed integer layouts.
+     */
+    private static final int BLACK = 0xFF000000;
+
+    private final int[] pixels;
+    private final int width;
+    private final SegmentStore segments;
+    private final int[] indexes;
+    private final int minX, minY, maxX, maxY;
+
+    Band(int[] pixels, int width, SegmentStore segments, int[] indexes, Rectangle region) {
+      this.pixels = pixels;
+      this.width = width;
+      this.segments = segments;
+      this.indexes = indexes;
+      this.minX = region.x;
+      this.minY = region.y;
+      this.maxX = region.x + region.width - 1;
+      this.maxY = region.y + region.height - 1;
+    }
+
+    @Override
+    protected void compute() {
+      SegmentStore.Cursor s = this.segments.cursor();
+      int i;
+
+      if(this.indexes == null) {
+        while(s.next()) {
+          this.line(s.getX1(), s.getY1(), s.getX2(), s.getY2());
+        }
+        return;
+      }
+
+      for(i = 0; i < this.indexes.length; i++) {
+        int k = this.indexes[i];
+        this.line(this.segments.getX1(k), this.segments.getY1(k), this.segments.getX2(k), this.segments.getY2(k));
+      }
+    }
+
+    /**
+     * Draw the part of a line inside the region. The Bresenham state is moved straight to the first step inside the
+     * region and the walk ends at the last one, so that a band does work for its own pixels only, however long the
+     * line. After i steps, the number of minor steps taken is (2 * minor * i + major) / (2 * major).
+     */
+    private void line(int x1, int y1, int x2, int y2) {
+      if(Math.max(x1, x2) < this.minX || Math.min(x1, x2) > this.maxX ||
+        Math.max(y1, y2) < this.minY || Math.min(y1, y2) > this.maxY) {
+        return;
+      }
+
+      int ax = Math.abs(x2 - x1), ay = Math.abs(y2 - y1);
+      int sx = x2 >= x1 ? 1 : -1, sy = y2 >= y1 ? 1 : -1;
+      boolean xMajor = ax >= ay;
+      int major = xMajor ? ax : ay, minor = xMajor ? ay : ax;
+      int first = Math.max(firstStep(x1, sx, this.minX, this.maxX, major, minor, xMajor),
+        firstStep(y1, sy, this.minY, this.maxY, major, minor, !xMajor));
+      int last = Math.min(lastStep(x1, sx, this.minX, this.maxX, major, minor, xMajor),
+        lastStep(y1, sy, this.minY, this.maxY, major, minor, !xMajor));
+
+      if(first > last) {
+        return;
+      }
+
+      int minorSteps = major == 0 ? 0 : (int) ((2L * minor * first + major) / (2L * major));
+      int error = (int) (-major + 2L * minor * first - 2L * major * minorSteps);
+      int x = x1 + sx * (xMajor ? first : minorSteps), y = y1 + sy * (xMajor ? minorSteps : first), i;
+
+      for(i = first; i <= last; i++) {
+        this.pixels[y * this.width + x] = BLACK;
+
+        error += 2 * minor;
+        if(error >= 0) {
+          error -= 2 * major;
+          if(xMajor) {
+            y += sy;
+          }
+          else {
+            x += sx;
+          }
+        }
+        if(xMajor) {
+          x += sx;
+        }
+        else {
+          y += sy;
+        }
+      }
+    }
+
+    /**
+     * First step of a line at which one of its coordinates is within a range.
+     * @param from Coordinate at the start of the line.
+     * @param step Direction of the line along the axis.
+     * @param along True if the axis is the major one of the line, moving at every step.
+     * @return Step index, greater than the major length if the range is never reached.
+     */
+    private static int firstStep(int from, int step, int min, int max, int major, int minor, boolean along) {
+      long moves = step > 0 ? (long) min - from : (long) from - max;
+
+      if(moves <= 0) {
+        return 0;
+      }
+      if(along) {
+        return (int) Math.min(moves, major + 1L);
+      }
+      if(minor == 0) {
+        return major + 1;
+      }
+
+      // Smallest step such that (2 * minor * i + major) / (2 * major) >= moves.
+      long steps = (2L * major * moves - major + 2L * minor - 1) / (2L * minor);
+      return (int) Math.min(steps, major + 1L);
+    }
+
+    /**
+     * Last step of a line at which one of its coordinates is within a range.
+     * @return Step index, negative if the range is left before the start of the line.
+     * @see #firstStep(int, int, int, int, int, int, boolean)
+     */
+    private static int lastStep(int from, int step, int min, int max, int major, int minor, boolean along) {
+      long moves = step > 0 ? (long) max - from : (long) from - min;
+
+      if(moves < 0) {
+        return -1;
+      }
+      if(along) {
+        return (int) Math.min(moves, major);
+      }
+      if(minor == 0) {
+        return major;
+      }
+
+      // Greatest step such that (2 * minor * i + major) / (2 * major) <= moves.
+      long steps = (2L * major * (moves + 1) - major - 1) / (2L * minor);
+      return (int) Math.min(steps, major);
+    }
+  }
+
+  /**
+   * All the bands of the image, drawn in parallel.
+   */
+  @SuppressWarnings("serial")
+  private static class Bands extends RecursiveAction {
+    private final List<Band> bands;
+
+    Bands(List<Band> bands) {
+      this.bands = bands;
+    }
+
+    @Override
+    protected void compute() {
+      invokeAll(this.bands);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Ways of combining the X and Y responses of a filter into a gradient magnitude in range 0 - 255.
+ *
+ * Accuracy against the exact magnitude min(255, floor(sqrt(gx^2 + gy^2))):
+ * <ul>
+ *   <li>{@link #EXACT} and {@link #LUT} give the exact magnitude.</li>
+ *   <li>{@link #L1} never underestimates it and overestimates it by at most 41 % (along the diagonals).</li>
+ *   <li>{@link #LINF} never overestimates it and underestimates it by at most 29 % (along the diagonals).</li>
+ * </ul>
+ * When only the thresholded image is needed, the exact modes are not even computed: the squared responses are
+ * compared with the squared threshold instead (see {@link #isWhite(int, int, int)}), which gives exactly the same
+ * black and white image.
+ */
+enum Magnitude {
+  /**
+   * Square root of the sum of the squares, computed in floating point.
+   */
+  EXACT {
+    @Override
+    int of(int gx, int gy) {
+      return Convolution.clamp((int) Math.sqrt(gx * gx + gy * gy));
+    }
+  },
+
+  /**
+   * Square root of the sum of the squares, looked up in a table of integer square roots. The result is the same as
+   * the one of {@link #EXACT} without any floating point arithmetic.
+   */
+  LUT {
+    @Override
+    int of(int gx, int gy) {
+      int squared = gx * gx + gy * gy;
+      return squared >= SQUARE_ROOTS.length ? 255 : SQUARE_ROOTS[squared] & 0xFF;
+    }
+  },
+
+  /**
+   * Sum of the absolute values (Manhattan norm).
+   */
+  L1 {
+    @Override
+    int of(int gx, int gy) {
+      return Math.min(255, Math.abs(gx) + Math.abs(gy));
+    }
+  },
+
+  /**
+   * Greatest absolute value (Chebyshev norm).
+   */
+  LINF {
+    @Override
+    int of(int gx, int gy) {
+      return Math.min(255, Math.max(Math.abs(gx), Math.abs(gy)));
+    }
+  };
+
+  /**
+   * Integer square roots of all the squared magnitudes below 256^2, greater ones being clamped to 255 anyway.
+   */
+  private static final byte[] SQUARE_ROOTS = new byte[256 * 256];
+
+  static {
+    int root = 0, i;
+
+    for(i = 0; i < SQUARE_ROOTS.length; i++) {
+      if((root + 1) * (root + 1) <= i) {
+        root++;
+      }
+      SQUARE_ROOTS[i] = (byte) root;
+    }
+  }
+
+  /**
+   * @param gx X-axis filter response.
+   * @param gy Y-axis filter response.
+   * @return Gradient magnitude in range 0 - 255.
+   */
+  abstract int of(int gx, int gy);
+
+  /**
+   * @return True if the mode gives the exact magnitude, so that thresholding can compare squared values instead.
+   */
+  boolean isExact() {
+    return this == EXACT || this == LUT;
+  }
+
+  /**
+   * Squared form of a threshold, such that a pixel is white (its exact magnitude is greater than the threshold)
+   * exactly when gx^2 + gy^2 is not less than it.
+   * @param threshold Black and white threshold value in range 0 - 255.
+   * @return Limit of the squared magnitude, greater than any squared magnitude for the threshold 255 as clamped
+   * magnitudes never exceed it.
+   */
+  static int squaredThreshold(int threshold) {
+    return threshold >= 255 ? Integer.MAX_VALUE : (threshold + 1) * (threshold + 1);
+  }
+
+  /**
+   * @param gx X-axis filter response.
+   * @param gy Y-axis filter response.
+   * @param squaredThreshold Value returned by {@link #squaredThreshold(int)}.
+   * @return True if the pixel is white.
+   */
+  static boolean isWhite(int gx, int gy, int squaredThreshold) {
+    return gx * gx + gy * gy >= squaredThreshold;
+  }
+}
@@ -21,7 +21,15 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 public class Main {
+    /**
+     * Open the user interface, or run the headless batch mode when arguments are given.
+     * @see Batch
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(Batch.run(args));
+        }
+
         Communicator window = new Communicator();
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.util.Map;
+
+/**
+ * Cumulative counters of the pipeline stages, registered as {@code JED:type=Metrics} in the platform MBean server
+ * when the {@code jed.metrics} system property is set to true. Maps are keyed by stage name.
+ * @see Telemetry
+ */
+public interface MetricsMXBean {
+  /**
+   * @return Number of pixels filtered.
+   */
+  long getPixelsProcessed();
+
+  /**
+   * @return Number of segments found by the vectorization.
+   */
+  long getSegmentsEmitted();
+
+  /**
+   * @return Number of bytes of the vector documents and thresholded images written.
+   */
+  long getBytesWritten();
+
+  /**
+   * @return Number of completed runs of each stage.
+   */
+  Map<String, Long> getStageCounts();
+
+  /**
+   * @return Total time spent in each stage, in nanoseconds.
+   */
+  Map<String, Long> getStageNanos();
+
+  /**
+   * @return Upper bounds of the latency histogram buckets in milliseconds, the last bucket having no bound.
+   */
+  long[] getLatencyBoundsMillis();
+
+  /**
+   * @return Number of runs of each stage by latency bucket.
+   * @see #getLatencyBoundsMillis()
+   */
+  Map<String, long[]> getLatencyHistograms();
+
+  /**
+   * Reset all the counters to zero.
+   */
+  void reset();
+}
@@ -0,0 +1,345 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Memory-mapped access to raw netpbm files: binary PGM (P5, 8 or 16 bits per pixel) input, binary PGM and PBM (P4)
+ * output. Pixel rows are read from and written to the mapped file directly, a limited number of rows being mapped at
+ * once, so files of any size can be processed without decoding them into a {@link java.awt.image.BufferedImage}.
+ */
+final class Netpbm {
+  /**
+   * Maximum number of bytes mapped at once.
+   */
+  private static final int CHUNK_BYTES = 64 << 20;
+
+  private Netpbm() {
+  }
+
+  /**
+   * @param file File to inspect.
+   * @return True if the file starts with the binary PGM magic number.
+   */
+  static boolean isPgm(File file) {
+    try(RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      return in.length() > 2 && in.read() == 'P' && in.read() == '5';
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Rows of a file mapped by chunks, remapped whenever a row outside of the current chunk is requested.
+   */
+  private static final class MappedRows {
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final long dataOffset;
+    private final int rowBytes;
+    private final int height;
+    private MappedByteBuffer buffer;
+    private int firstRow, lastRow;
+
+    MappedRows(FileChannel channel, FileChannel.MapMode mode, long dataOffset, int rowBytes, int height) {
+      this.channel = channel;
+      this.mode = mode;
+      this.dataOffset = dataOffset;
+      this.rowBytes = rowBytes;
+      this.height = height;
+    }
+
+    /**
+     * @param y Row number.
+     * @return Position of the row in the mapped buffer.
+     */
+    int locate(int y) throws IOException {
+      if(this.buffer == null || y < this.firstRow || y >= this.lastRow) {
+        this.firstRow = y;
+        this.lastRow = (int) Math.min(this.height, y + Math.max(1L, CHUNK_BYTES / Math.max(1, this.rowBytes)));
+        this.buffer = this.channel.map(this.mode, this.dataOffset + (long) y * this.rowBytes,
+          (long) (this.lastRow - this.firstRow) * this.rowBytes);
+      }
+      return (y - this.firstRow) * this.rowBytes;
+    }
+
+    MappedByteBuffer buffer() {
+      return this.buffer;
+    }
+  }
+
+  /**
+   * Binary PGM image opened for reading.
+   */
+  static final class Input implements Closeable {
+    private final RandomAccessFile file;
+    private final int width, height, maxValue;
+    private final MappedRows rows;
+
+    Input(File source) throws IOException {
+      this.file = new RandomAccessFile(source, "r");
+
+      try {
+        FileChannel channel = this.file.getChannel();
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(1024, channel.size()));
+        channel.read(head, 0);
+        head.flip();
+
+        if(head.remaining() < 2 || head.get() != 'P' || head.get() != '5') {
+          throw new IOException("Not a binary PGM file: " + source);
+        }
+
+        this.width = nextNumber(head);
+        this.height = nextNumber(head);
+        this.maxValue = nextNumber(head);
+
+        if(this.width < 1 || this.height < 1 || this.maxValue < 1 || this.maxValue > 65535 || !head.hasRemaining()) {
+          throw new IOException("Invalid PGM header: " + source);
+        }
+
+        // A single whitespace character separates the header from the pixels.
+        head.get();
+
+        int rowBytes = this.width * (this.maxValue > 255 ? 2 : 1);
+        if(head.position() + (long) rowBytes * this.height > channel.size()) {
+          throw new IOException("Truncated PGM file: " + source);
+        }
+
+        this.rows = new MappedRows(channel, FileChannel.MapMode.READ_ONLY, head.position(), rowBytes, this.height);
+      } catch (IOException | RuntimeException e) {
+        this.file.close();
+        throw e;
+      }
+    }
+
+    public int getWidth() {
+      return this.width;
+    }
+
+    public int getHeight() {
+      return this.height;
+    }
+
+    /**
+     * Read gray levels, scaled to range 0 - 255, of a range of rows.
+     * @param fromRow First row to read.
+     * @param toRow Row following the last row to read.
+     * @param pixels Destination array in row-major order.
+     * @param offset Index in the destination array of the first pixel of the first row.
+     * @throws IOException If the file could not be mapped.
+     */
+    void readRows(int fromRow, int toRow, int[] pixels, int offset) throws IOException {
+      int y, x, i = offset;
+
+      for(y = fromRow; y < toRow; y++) {
+        int position = this.rows.locate(y);
+        MappedByteBuffer buffer = this.rows.buffer();
+
+        if(this.maxValue == 255) {
+          for(x = 0; x < this.width; x++) {
+            pixels[i++] = buffer.get(position + x) & 0xFF;
+          }
+        }
+        else if(this.maxValue < 256) {
+          for(x = 0; x < this.width; x++) {
+            pixels[i++] = ((buffer.get(position + x) & 0xFF) * 255 + this.maxValue / 2) / this.maxValue;
+          }
+        }
+        else {
+          for(x = 0; x < this.width; x++) {
+            int value = buffer.getShort(position + 2 * x) & 0xFFFF;
+            pixels[i++] = (value * 255 + this.maxValue / 2) / this.maxValue;
+          }
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.file.close();
+    }
+  }
+
+  /**
+   * Binary PGM (8 bits per pixel) or PBM image created for writing.
+   */
+  static final class Output implements Closeable {
+    private final RandomAccessFile file;
+    private final int width;
+    private final boolean bitmap;
+    private final MappedRows rows;
+
+    /**
+     * Create the file with its final size.
+     * @param target File to create.
+     * @param width Image width.
+     * @param height Image height.
+     * @param bitmap True for a PBM bitmap, false for a PGM gray map.
+     * @throws IOException If the file could not be created.
+     */
+    Output(File target, int width, int height, boolean bitmap) throws IOException {
+      byte[] header = ((bitmap ? "P4\n" : "P5\n") + width + " " + height + (bitmap ? "\n" : "\n255\n"))
+        .getBytes(StandardCharsets.US_ASCII);
+      int rowBytes = bitmap ? (width + 7) / 8 : width;
+
+      this.file = new RandomAccessFile(target, "rw");
+      this.width = width;
+      this.bitmap = bitmap;
+
+      try {
+        this.file.setLength(header.length + (long) rowBytes * height);
+        this.file.write(header);
+        this.rows = new MappedRows(this.file.getChannel(), FileChannel.MapMode.READ_WRITE, header.length, rowBytes, height);
+      } catch (IOException | RuntimeException e) {
+        this.file.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Write a range of rows. A PGM file receives the gray levels as they are, a PBM file receives black pixels
+     * (set bits) where the gray level is not greater than the threshold and white pixels elsewhere.
+     * @param fromRow First row to write.
+     * @param toRow Row following the last row to write.
+     * @param pixels Gray levels in range 0 - 255 in row-major order.
+     * @param offset Index in the source array of the first pixel of the first row.
+     * @param threshold Black and white threshold value, ignored for PGM files.
+     * @throws IOException If the file could not be mapped.
+     */
+    void writeRows(int fromRow, int toRow, int[] pixels, int offset, int threshold) throws IOException {
+      int y, x, i = offset;
+
+      for(y = fromRow; y < toRow; y++) {
+        int position = this.rows.locate(y);
+        MappedByteBuffer buffer = this.rows.buffer();
+
+        if(!this.bitmap) {
+          for(x = 0; x < this.width; x++) {
+            buffer.put(position + x, (byte) pixels[i++]);
+          }
+          continue;
+        }
+
+        for(x = 0; x < this.width; x += 8) {
+          int bits = 0, bit;
+
+          for(bit = 0; bit < 8 && x + bit < this.width; bit++) {
+            if(pixels[i++] <= threshold) {
+              bits |= 0x80 >>> bit;
+            }
+          }
+
+          buffer.put(position + (x >> 3), (byte) bits);
+        }
+      }
+    }
+
+    /**
+     * Write the rows of a bitmap: black pixels (set bits) where the bitmap is black and white pixels elsewhere.
+     * @param fromRow Row the first row of the bitmap is written to.
+     * @param bitmap Black and white image, as wide as the file.
+     * @param rows Number of rows of the bitmap to write.
+     * @throws IOException If the file could not be mapped.
+     * @throws IllegalStateException If the file is a PGM file.
+     */
+    void writeRows(int fromRow, Bitmap bitmap, int rows) throws IOException {
+      int y, x;
+
+      if(!this.bitmap) {
+        throw new IllegalStateException("Bitmaps are written to PBM files only");
+      }
+
+      for(y = 0; y < rows; y++) {
+        int position = this.rows.locate(fromRow + y);
+        MappedByteBuffer buffer = this.rows.buffer();
+
+        for(x = 0; x < this.width; x += 8) {
+          int bits = 0, bit;
+
+          for(bit = 0; bit < 8 && x + bit < this.width; bit++) {
+            if(!bitmap.get(x + bit, y)) {
+              bits |= 0x80 >>> bit;
+            }
+          }
+
+          buffer.put(position + (x >> 3), (byte) bits);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.file.close();
+    }
+  }
+
+  /**
+   * Parse the next decimal number of a netpbm header, skipping whitespace and comments.
+   */
+  private static int nextNumber(ByteBuffer head) throws IOException {
+    int c, value = 0, digits = 0;
+
+    while(head.hasRemaining()) {
+      c = head.get();
+
+      if(c == '#') {
+        while(head.hasRemaining() && head.get() != '\n') {
+          // Skip the comment.
+        }
+      }
+      else if(c >= '0' && c <= '9') {
+        value = c - '0';
+        digits = 1;
+        break;
+      }
+      else if(c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        throw new IOException("Unexpected character in netpbm header: " + (char) c);
+      }
+    }
+
+    while(digits > 0 && head.hasRemaining()) {
+      c = head.get(head.position());
+
+      if(c < '0' || c > '9') {
+        break;
+      }
+
+      head.get();
+      value = value * 10 + (c - '0');
+      if(++digits > 9) {
+        throw new IOException("Number too large in netpbm header");
+      }
+    }
+
+    if(digits == 0) {
+      throw new IOException("Truncated netpbm header");
+    }
+
+    return value;
+  }
+}
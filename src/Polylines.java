@@ -0,0 +1,394 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.util.Arrays;
+
+/**
+ * Polylines built from detected segments. Segments whose endpoints are the same or neighbor pixels are chained
+ * into polylines, which are then simplified with the Douglas-Peucker algorithm: a point is dropped when the
+ * polyline without it stays within the tolerance of it. With a tolerance of 0, only the points in the middle of
+ * straight runs are dropped, so the drawing is exactly the one of the segments (plus the one pixel joints between
+ * neighbor endpoints).
+ *
+ * Points are kept in two parallel arrays, the points of polyline i running from {@link #getStart(int)} to
+ * {@link #getEnd(int)}.
+ *
+ * @see ContourTracer
+ */
+final class Polylines {
+  private int[] xs, ys;
+  private int points;
+
+  /**
+   * Index of the first point of each polyline, followed by the number of points.
+   */
+  private int[] starts;
+  private int count;
+
+  Polylines(int capacity) {
+    this.xs = new int[Math.max(16, capacity)];
+    this.ys = new int[this.xs.length];
+    this.starts = new int[Math.max(16, capacity / 2)];
+  }
+
+  /**
+   * @return Number of polylines.
+   */
+  public int size() {
+    return this.count;
+  }
+
+  /**
+   * @return Total number of points.
+   */
+  public int getPointCount() {
+    return this.points;
+  }
+
+  /**
+   * @param polyline Polyline index.
+   * @return Index of its first point.
+   */
+  public int getStart(int polyline) {
+    return this.starts[polyline];
+  }
+
+  /**
+   * @param polyline Polyline index.
+   * @return Index following its last point.
+   */
+  public int getEnd(int polyline) {
+    return polyline + 1 < this.count ? this.starts[polyline + 1] : this.points;
+  }
+
+  public int getX(int point) {
+    return this.xs[point];
+  }
+
+  public int getY(int point) {
+    return this.ys[point];
+  }
+
+  private void addPoint(int x, int y) {
+    if(this.points == this.xs.length) {
+      this.xs = Arrays.copyOf(this.xs, this.points * 2);
+      this.ys = Arrays.copyOf(this.ys, this.points * 2);
+    }
+    this.xs[this.points] = x;
+    this.ys[this.points] = y;
+    this.points++;
+  }
+
+  private void startPolyline() {
+    if(this.count == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, this.count * 2);
+    }
+    this.starts[this.count++] = this.points;
+  }
+
+  /**
+   * Simplify the polylines again.
+   * @param tolerance Greatest distance, in pixels, between a dropped point and the simplified polyline.
+   * @return Simplified polylines, in the same order.
+   */
+  public Polylines simplified(double tolerance) {
+    if(!(tolerance >= 0)) {
+      throw new IllegalArgumentException("Tolerance must be a non-negative number, got " + tolerance);
+    }
+
+    Polylines polylines = new Polylines(this.points);
+    Chain chain = new Chain();
+    int i, p;
+
+    for(i = 0; i < this.count; i++) {
+      chain.clear();
+      for(p = this.getStart(i); p < this.getEnd(i); p++) {
+        chain.add(this.xs[p], this.ys[p]);
+      }
+      simplify(chain, tolerance, polylines);
+    }
+
+    return polylines;
+  }
+
+  /**
+   * Chain and simplify segments.
+   * @param segments Detected segments.
+   * @param tolerance Greatest distance, in pixels, between a dropped point and the simplified polyline.
+   * @return Simplified polylines, in the order of their first segment.
+   */
+  public static Polylines of(SegmentStore segments, double tolerance) {
+    if(!(tolerance >= 0)) {
+      throw new IllegalArgumentException("Tolerance must be a non-negative number, got " + tolerance);
+    }
+
+    Polylines polylines = new Polylines(segments.size());
+    Chainer chainer = new Chainer(segments);
+    Chain chain = new Chain();
+    int i;
+
+    for(i = 0; i < segments.size(); i++) {
+      if(chainer.used[i]) {
+        continue;
+      }
+
+      chainer.used[i] = true;
+
+      // Grow the chain from the end of the segment, then from its start, the latter points being prepended.
+      chain.clear();
+      chain.add(segments.getX1(i), segments.getY1(i));
+      chain.add(segments.getX2(i), segments.getY2(i));
+      chainer.extend(chain);
+      chain.reverse();
+      chainer.extend(chain);
+
+      simplify(chain, tolerance, polylines);
+    }
+
+    return polylines;
+  }
+
+  /**
+   * Growable list of the points of the polyline being built.
+   */
+  static final class Chain {
+    int[] xs = new int[64], ys = new int[64];
+    int size;
+
+    /**
+     * Scratch buffers of the simplification.
+     */
+    boolean[] keep = new boolean[64];
+    int[] stack = new int[128];
+
+    void clear() {
+      this.size = 0;
+    }
+
+    void add(int x, int y) {
+      if(this.size == this.xs.length) {
+        this.xs = Arrays.copyOf(this.xs, this.size * 2);
+        this.ys = Arrays.copyOf(this.ys, this.size * 2);
+      }
+      this.xs[this.size] = x;
+      this.ys[this.size] = y;
+      this.size++;
+    }
+
+    void reverse() {
+      int i, j;
+
+      for(i = 0, j = this.size - 1; i < j; i++, j--) {
+        int x = this.xs[i], y = this.ys[i];
+        this.xs[i] = this.xs[j];
+        this.ys[i] = this.ys[j];
+        this.xs[j] = x;
+        this.ys[j] = y;
+      }
+    }
+  }
+
+  /**
+   * Finds unused segments with an endpoint at or next to a given pixel, through the endpoints sorted by position.
+   */
+  private static final class Chainer {
+    /**
+     * Offsets of the searched pixels, the pixel itself being searched first.
+     */
+    private static final int[] DX = { 0, -1, 0, 1, -1, 1, -1, 0, 1 };
+    private static final int[] DY = { 0, -1, -1, -1, 0, 0, 1, 1, 1 };
+
+    final SegmentStore segments;
+    final boolean[] used;
+
+    /**
+     * Endpoints sorted by position: position key in the high half, segment index times 2 (plus 1 for the second
+     * endpoint) in the low half.
+     */
+    private final long[] endpoints;
+    private final long stride;
+
+    Chainer(SegmentStore segments) {
+      int n = segments.size();
+      int i, maxX = 0;
+
+      this.segments = segments;
+      this.used = new boolean[n];
+      this.endpoints = new long[2 * n];
+
+      for(i = 0; i < n; i++) {
+        maxX = Math.max(maxX, Math.max(segments.getX1(i), segments.getX2(i)));
+      }
+
+      this.stride = maxX + 3L;
+
+      for(i = 0; i < n; i++) {
+        this.endpoints[2 * i] = this.key(segments.getX1(i), segments.getY1(i)) << 32 | (2L * i);
+        this.endpoints[2 * i + 1] = this.key(segments.getX2(i), segments.getY2(i)) << 32 | (2L * i + 1);
+      }
+
+      Arrays.sort(this.endpoints);
+    }
+
+    private long key(int x, int y) {
+      return (y + 1L) * this.stride + (x + 1L);
+    }
+
+    /**
+     * Append unused segments to the chain as long as one touches its last point.
+     */
+    void extend(Chain chain) {
+      while(true) {
+        int x = chain.xs[chain.size - 1], y = chain.ys[chain.size - 1];
+        int endpoint = this.find(x, y);
+
+        if(endpoint < 0) {
+          return;
+        }
+
+        int segment = endpoint >>> 1;
+        boolean first = (endpoint & 1) == 0;
+        int ex = first ? this.segments.getX1(segment) : this.segments.getX2(segment);
+        int ey = first ? this.segments.getY1(segment) : this.segments.getY2(segment);
+
+        this.used[segment] = true;
+
+        if(ex != x || ey != y) {
+          chain.add(ex, ey);
+        }
+
+        chain.add(first ? this.segments.getX2(segment) : this.segments.getX1(segment),
+          first ? this.segments.getY2(segment) : this.segments.getY1(segment));
+      }
+    }
+
+    /**
+     * @return Endpoint of an unused segment at or next to the pixel, or -1 if there are none.
+     */
+    private int find(int x, int y) {
+      int d;
+
+      for(d = 0; d < DX.length; d++) {
+        if(x + DX[d] < 0 || y + DY[d] < 0) {
+          continue;
+        }
+
+        long key = this.key(x + DX[d], y + DY[d]);
+        int i = lowerBound(this.endpoints, key << 32);
+
+        for(; i < this.endpoints.length && this.endpoints[i] >>> 32 == key; i++) {
+          int endpoint = (int) this.endpoints[i];
+
+          if(!this.used[endpoint >>> 1]) {
+            return endpoint;
+          }
+        }
+      }
+
+      return -1;
+    }
+
+    private static int lowerBound(long[] values, long value) {
+      int low = 0, high = values.length;
+
+      while(low < high) {
+        int middle = (low + high) >>> 1;
+
+        if(values[middle] < value) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+
+      return low;
+    }
+  }
+
+  /**
+   * Douglas-Peucker simplification of a chain, appended to the polylines. Ranges left to simplify are kept on an
+   * explicit stack, as chains may be far too long for recursion.
+   */
+  static void simplify(Chain chain, double tolerance, Polylines polylines) {
+    int n = chain.size;
+    int top = 0, i;
+
+    if(chain.keep.length < n) {
+      chain.keep = new boolean[chain.xs.length];
+      chain.stack = new int[2 * chain.xs.length];
+    }
+
+    boolean[] keep = chain.keep;
+    int[] stack = chain.stack;
+
+    Arrays.fill(keep, 0, n, false);
+
+    keep[0] = true;
+    keep[n - 1] = true;
+    stack[top++] = 0;
+    stack[top++] = n - 1;
+
+    while(top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      double farthest = -1;
+      int split = -1;
+
+      for(i = first + 1; i < last; i++) {
+        double distance = distance(chain.xs[i], chain.ys[i], chain.xs[first], chain.ys[first], chain.xs[last], chain.ys[last]);
+
+        if(distance > farthest) {
+          farthest = distance;
+          split = i;
+        }
+      }
+
+      if(split >= 0 && farthest > tolerance) {
+        keep[split] = true;
+        stack[top++] = first;
+        stack[top++] = split;
+        stack[top++] = split;
+        stack[top++] = last;
+      }
+    }
+
+    polylines.startPolyline();
+
+    for(i = 0; i < n; i++) {
+      if(keep[i]) {
+        polylines.addPoint(chain.xs[i], chain.ys[i]);
+      }
+    }
+  }
+
+  /**
+   * @return Distance between point p and the segment from a to b.
+   */
+  private static double distance(int px, int py, int ax, int ay, int bx, int by) {
+    double dx = bx - ax, dy = by - ay;
+    double length = dx * dx + dy * dy;
+    double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / length));
+    double x = ax + t * dx - px, y = ay + t * dy - py;
+
+    return Math.sqrt(x * x + y * y);
+  }
+}
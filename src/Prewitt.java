@@ -34,9 +34,10 @@ class Prewitt extends Convolution {
   }
 
   /**
-   * Set filter matrices and apply the filter.
+   * Set filter matrices.
    */
-  public void applyPrewitt() {
+  @Override
+  public void setFilterMatrices() {
     int[][] filterX = {
       { -1, 0, 1 },
       { -1, 0, 1 },
@@ -49,6 +50,13 @@ class Prewitt extends Convolution {
     };
 
     this.setConvolutionMatrix(filterX, filterY);
+  }
+
+  /**
+   * Set filter matrices and apply the filter.
+   */
+  public void applyPrewitt() {
+    this.setFilterMatrices();
     this.processImage();
   }
 }
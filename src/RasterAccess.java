@@ -0,0 +1,527 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+
+/**
+ * Direct access to the pixel arrays backing the most common image layouts. Going through
+ * {@link BufferedImage#getRGB(int, int)} and {@link BufferedImage#setRGB(int, int, int)} costs a color model
+ * conversion per pixel, so whenever the layout of the image is known we read and write the backing array instead.
+ * Images with any other color model fall back to the per-pixel path.
+ */
+final class RasterAccess {
+  /**
+   * Pixel layouts we know how to access directly.
+   */
+  enum Layout {
+    /**
+     * Interleaved bytes in blue, green, red order (TYPE_3BYTE_BGR, what ImageIO gives for JPEG files).
+     */
+    BYTE_BGR,
+    /**
+     * Interleaved bytes in alpha, blue, green, red order (TYPE_4BYTE_ABGR).
+     */
+    BYTE_ABGR,
+    /**
+     * One byte per pixel holding the gray level (TYPE_BYTE_GRAY).
+     */
+    BYTE_GRAY,
+    /**
+     * Packed 0xRRGGBB integers (TYPE_INT_RGB).
+     */
+    INT_RGB,
+    /**
+     * Packed 0xAARRGGBB integers (TYPE_INT_ARGB).
+     */
+    INT_ARGB,
+    /**
+     * Anything else, accessed through the color model.
+     */
+    GENERIC
+  }
+
+  private RasterAccess() {
+  }
+
+  /**
+   * Detect the pixel layout of an image. Sub-images sharing the raster of a larger image are reported as
+   * {@link Layout#GENERIC} because their pixels do not start at the beginning of the backing array.
+   * @param image Image to inspect.
+   * @return Layout of the backing array.
+   */
+  static Layout layoutOf(BufferedImage image) {
+    WritableRaster raster = image.getRaster();
+
+    if(raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0 ||
+      raster.getSampleModel().getWidth() != image.getWidth() || raster.getSampleModel().getHeight() != image.getHeight()) {
+      return Layout.GENERIC;
+    }
+
+    switch(image.getType()) {
+      case BufferedImage.TYPE_3BYTE_BGR:
+        return Layout.BYTE_BGR;
+      case BufferedImage.TYPE_4BYTE_ABGR:
+        return Layout.BYTE_ABGR;
+      case BufferedImage.TYPE_BYTE_GRAY:
+        return Layout.BYTE_GRAY;
+      case BufferedImage.TYPE_INT_RGB:
+        return Layout.INT_RGB;
+      case BufferedImage.TYPE_INT_ARGB:
+        return Layout.INT_ARGB;
+      default:
+        return Layout.GENERIC;
+    }
+  }
+
+  private static byte[] bytes(BufferedImage image) {
+    return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+  }
+
+  /**
+   * @return Backing array of an image with a packed integer layout.
+   */
+  static int[] ints(BufferedImage image) {
+    return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+  }
+
+  /**
+   * Create a blank image with the same size, color model and layout as another one.
+   * @param image Model image.
+   * @return New image.
+   */
+  static BufferedImage createCompatible(BufferedImage image) {
+    ColorModel model = image.getColorModel();
+    WritableRaster raster = model.createCompatibleWritableRaster(image.getWidth(), image.getHeight());
+    return new BufferedImage(model, raster, model.isAlphaPremultiplied(), null);
+  }
+
+  /**
+   * Get an image whose pixels can be accessed directly.
+   * @param image Image.
+   * @return The image itself if its layout is supported, or its copy as packed ARGB integers.
+   */
+  static BufferedImage toDirect(BufferedImage image) {
+    if(layoutOf(image) != Layout.GENERIC) {
+      return image;
+    }
+
+    int width = image.getWidth();
+    int height = image.getHeight();
+    BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    image.getRGB(0, 0, width, height, ints(copy), 0, width);
+    return copy;
+  }
+
+  /**
+   * Replace every pixel by the average of its red, green and blue components, keeping its alpha value.
+   * @param image Image to convert in place.
+   */
+  static void toGrayscale(BufferedImage image) {
+    toGrayscale(image, image);
+  }
+
+  /**
+   * Write the grayscale version of an image to another one, which may be the image itself.
+   * @param source Image to convert.
+   * @param target Image of the same size and type receiving the result.
+   * @see #createCompatible(BufferedImage)
+   */
+  static void toGrayscale(BufferedImage source, BufferedImage target) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    int size = width * height;
+    int i;
+    Layout layout = layoutOf(source);
+
+    if(layout != layoutOf(target)) {
+      layout = Layout.GENERIC;
+    }
+
+    switch(layout) {
+      case BYTE_BGR: {
+        byte[] data = bytes(source);
+        byte[] out = bytes(target);
+        for(i = 0; i < size * 3; i += 3) {
+          byte average = (byte) (((data[i] & 0xFF) + (data[i + 1] & 0xFF) + (data[i + 2] & 0xFF)) / 3);
+          out[i] = average;
+          out[i + 1] = average;
+          out[i + 2] = average;
+        }
+        break;
+      }
+      case BYTE_ABGR: {
+        byte[] data = bytes(source);
+        byte[] out = bytes(target);
+        for(i = 0; i < size * 4; i += 4) {
+          byte average = (byte) (((data[i + 1] & 0xFF) + (data[i + 2] & 0xFF) + (data[i + 3] & 0xFF)) / 3);
+          out[i] = data[i];
+          out[i + 1] = average;
+          out[i + 2] = average;
+          out[i + 3] = average;
+        }
+        break;
+      }
+      case BYTE_GRAY:
+        // Already gray, only copy it if needed.
+        if(source != target) {
+          System.arraycopy(bytes(source), 0, bytes(target), 0, size);
+        }
+        break;
+      case INT_RGB:
+      case INT_ARGB: {
+        int[] data = ints(source);
+        int[] out = ints(target);
+        for(i = 0; i < size; i++) {
+          int pixel = data[i];
+          int average = (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+          out[i] = (pixel & 0xFF000000) | (average << 16) | (average << 8) | average;
+        }
+        break;
+      }
+      default: {
+        int x, y;
+        for(x = 0; x < width; x++) {
+          for(y = 0; y < height; y++) {
+            int pixel = source.getRGB(x, y);
+            int average = (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+            target.setRGB(x, y, (pixel & 0xFF000000) | (average << 16) | (average << 8) | average);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Read the red component of every pixel (which is the gray level of a grayscaled image).
+   * @param image Source image.
+   * @param pixels Destination array in row-major order (index y * width + x).
+   */
+  static void readRed(BufferedImage image, int[] pixels) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int size = width * height;
+    int i;
+
+    switch(layoutOf(image)) {
+      case BYTE_BGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < size; i++) {
+          pixels[i] = data[i * 3 + 2] & 0xFF;
+        }
+        break;
+      }
+      case BYTE_ABGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < size; i++) {
+          pixels[i] = data[i * 4 + 3] & 0xFF;
+        }
+        break;
+      }
+      case BYTE_GRAY: {
+        byte[] data = bytes(image);
+        for(i = 0; i < size; i++) {
+          pixels[i] = data[i] & 0xFF;
+        }
+        break;
+      }
+      case INT_RGB:
+      case INT_ARGB: {
+        int[] data = ints(image);
+        for(i = 0; i < size; i++) {
+          pixels[i] = (data[i] >> 16) & 0xFF;
+        }
+        break;
+      }
+      default: {
+        int x, y;
+        for(y = 0, i = 0; y < height; y++) {
+          for(x = 0; x < width; x++, i++) {
+            pixels[i] = (image.getRGB(x, y) >> 16) & 0xFF;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Write gray levels back to an image as opaque gray pixels.
+   * @param image Destination image.
+   * @param pixels Gray levels in range 0 - 255 in row-major order (index y * width + x).
+   */
+  static void writeGray(BufferedImage image, int[] pixels) {
+    writeGray(image, 0, image.getHeight(), pixels, 0);
+  }
+
+  /**
+   * Compute the average of the red, green and blue components (the gray level given by
+   * {@link #toGrayscale(BufferedImage)}) of every pixel in a range of rows, without modifying the image.
+   * @param image Source image.
+   * @param fromRow First row to read.
+   * @param toRow Row following the last row to read.
+   * @param pixels Destination array in row-major order.
+   * @param offset Index in the destination array of the first pixel of the first row.
+   */
+  static void readAverage(BufferedImage image, int fromRow, int toRow, int[] pixels, int offset) {
+    int width = image.getWidth();
+    int count = (toRow - fromRow) * width;
+    int first = fromRow * width;
+    int i;
+
+    switch(layoutOf(image)) {
+      case BYTE_BGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          int p = (first + i) * 3;
+          pixels[offset + i] = ((data[p] & 0xFF) + (data[p + 1] & 0xFF) + (data[p + 2] & 0xFF)) / 3;
+        }
+        break;
+      }
+      case BYTE_ABGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          int p = (first + i) * 4;
+          pixels[offset + i] = ((data[p + 1] & 0xFF) + (data[p + 2] & 0xFF) + (data[p + 3] & 0xFF)) / 3;
+        }
+        break;
+      }
+      case BYTE_GRAY: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          pixels[offset + i] = data[first + i] & 0xFF;
+        }
+        break;
+      }
+      case INT_RGB:
+      case INT_ARGB: {
+        int[] data = ints(image);
+        for(i = 0; i < count; i++) {
+          int pixel = data[first + i];
+          pixels[offset + i] = (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+        }
+        break;
+      }
+      default: {
+        int x, y;
+        for(y = fromRow, i = offset; y < toRow; y++) {
+          for(x = 0; x < width; x++, i++) {
+            int pixel = image.getRGB(x, y);
+            pixels[i] = (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Write gray levels to a range of rows of an image as opaque gray pixels.
+   * @param image Destination image.
+   * @param fromRow First row to write.
+   * @param toRow Row following the last row to write.
+   * @param pixels Gray levels in range 0 - 255 in row-major order.
+   * @param offset Index in the source array of the first pixel of the first row.
+   */
+  static void writeGray(BufferedImage image, int fromRow, int toRow, int[] pixels, int offset) {
+    int width = image.getWidth();
+    int count = (toRow - fromRow) * width;
+    int first = fromRow * width;
+    int i;
+
+    switch(layoutOf(image)) {
+      case BYTE_BGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          byte gray = (byte) pixels[offset + i];
+          int p = (first + i) * 3;
+          data[p] = gray;
+          data[p + 1] = gray;
+          data[p + 2] = gray;
+        }
+        break;
+      }
+      case BYTE_ABGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          byte gray = (byte) pixels[offset + i];
+          int p = (first + i) * 4;
+          data[p] = (byte) 0xFF;
+          data[p + 1] = gray;
+          data[p + 2] = gray;
+          data[p + 3] = gray;
+        }
+        break;
+      }
+      case BYTE_GRAY: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          data[first + i] = (byte) pixels[offset + i];
+        }
+        break;
+      }
+      case INT_RGB:
+      case INT_ARGB: {
+        int[] data = ints(image);
+        for(i = 0; i < count; i++) {
+          int gray = pixels[offset + i];
+          data[first + i] = 0xFF000000 | (gray << 16) | (gray << 8) | gray;
+        }
+        break;
+      }
+      default: {
+        int x, y;
+        for(y = fromRow, i = offset; y < toRow; y++) {
+          for(x = 0; x < width; x++, i++) {
+            int gray = pixels[i];
+            image.setRGB(x, y, 0xFF000000 | (gray << 16) | (gray << 8) | gray);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Write white pixels where the gray level is greater than the threshold and black pixels elsewhere
+   * to a range of rows of an image.
+   * @param image Destination image.
+   * @param fromRow First row to write.
+   * @param toRow Row following the last row to write.
+   * @param pixels Gray levels in range 0 - 255 in row-major order.
+   * @param offset Index in the source array of the first pixel of the first row.
+   * @param threshold Black and white threshold value.
+   */
+  static void writeBinary(BufferedImage image, int fromRow, int toRow, int[] pixels, int offset, int threshold) {
+    int width = image.getWidth();
+    int count = (toRow - fromRow) * width;
+    int first = fromRow * width;
+    int i;
+
+    switch(layoutOf(image)) {
+      case BYTE_BGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          byte value = pixels[offset + i] > threshold ? (byte) 0xFF : 0;
+          int p = (first + i) * 3;
+          data[p] = value;
+          data[p + 1] = value;
+          data[p + 2] = value;
+        }
+        break;
+      }
+      case BYTE_ABGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          byte value = pixels[offset + i] > threshold ? (byte) 0xFF : 0;
+          int p = (first + i) * 4;
+          data[p] = (byte) 0xFF;
+          data[p + 1] = value;
+          data[p + 2] = value;
+          data[p + 3] = value;
+        }
+        break;
+      }
+      case BYTE_GRAY: {
+        byte[] data = bytes(image);
+        for(i = 0; i < count; i++) {
+          data[first + i] = pixels[offset + i] > threshold ? (byte) 0xFF : 0;
+        }
+        break;
+      }
+      case INT_RGB:
+      case INT_ARGB: {
+        int[] data = ints(image);
+        for(i = 0; i < count; i++) {
+          data[first + i] = pixels[offset + i] > threshold ? 0xFFFFFFFF : 0xFF000000;
+        }
+        break;
+      }
+      default: {
+        int x, y;
+        for(y = fromRow, i = offset; y < toRow; y++) {
+          for(x = 0; x < width; x++, i++) {
+            image.setRGB(x, y, pixels[i] > threshold ? 0xFFFFFFFF : 0xFF000000);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Turn every pixel whose red component is greater than the threshold white and every other pixel black.
+   * @param image Image to threshold in place.
+   * @param threshold Black and white threshold value.
+   */
+  static void threshold(BufferedImage image, int threshold) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int size = width * height;
+    int i;
+
+    switch(layoutOf(image)) {
+      case BYTE_BGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < size * 3; i += 3) {
+          byte value = (data[i + 2] & 0xFF) > threshold ? (byte) 0xFF : 0;
+          data[i] = value;
+          data[i + 1] = value;
+          data[i + 2] = value;
+        }
+        break;
+      }
+      case BYTE_ABGR: {
+        byte[] data = bytes(image);
+        for(i = 0; i < size * 4; i += 4) {
+          byte value = (data[i + 3] & 0xFF) > threshold ? (byte) 0xFF : 0;
+          data[i] = (byte) 0xFF;
+          data[i + 1] = value;
+          data[i + 2] = value;
+          data[i + 3] = value;
+        }
+        break;
+      }
+      case BYTE_GRAY: {
+        byte[] data = bytes(image);
+        for(i = 0; i < size; i++) {
+          data[i] = (data[i] & 0xFF) > threshold ? (byte) 0xFF : 0;
+        }
+        break;
+      }
+      case INT_RGB:
+      case INT_ARGB: {
+        int[] data = ints(image);
+        for(i = 0; i < size; i++) {
+          data[i] = ((data[i] >> 16) & 0xFF) > threshold ? 0xFFFFFFFF : 0xFF000000;
+        }
+        break;
+      }
+      default: {
+        int x, y;
+        for(x = 0; x < width; x++) {
+          for(y = 0; y < height; y++) {
+            image.setRGB(x, y, ((image.getRGB(x, y) >> 16) & 0xFF) > threshold ? 0xFFFFFFFF : 0xFF000000);
+          }
+        }
+      }
+    }
+  }
+}
@@ -20,7 +20,6 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 import java.awt.image.BufferedImage;
-import java.awt.Color;
 
 /**
  * Roberts filter class.
@@ -35,66 +34,10 @@ class Roberts extends Convolution {
   }
 
   /**
-   * Redefinition of the filter applying method because Roberts filter uses matrices of size
-   * 2x2 and not 3x3 as the other filters.
-   *
-   * @see Convolution#processImage()
+   * Set filter matrices.
    */
   @Override
-  public void processImage() {
-    int width = this.getImage().getWidth();
-    int height = this.getImage().getHeight();
-    int i, j;
-    int[][] pixels = new int[width][height];
-
-    this.convertToGrayscale();
-
-    BufferedImage temp = this.getImage();
-
-    for(i = 0; i < width; i++) {
-      for(j = 0; j < height; j++) {
-        Color color = new Color(this.getImage().getRGB(i, j));
-        pixels[i][j] = color.getRed();
-      }
-    }
-
-    for(i = 0; i < (width - 1); i++) {
-      for (j = 0; j < (height - 1); j++) {
-        int pixelX = (pixels[i][j] * this.filterX[0][0]) + (pixels[i + 1][j] * this.filterX[1][0]) +
-          (pixels[i][j + 1] * this.filterX[0][1]) + (pixels[i + 1][j + 1] * this.filterX[1][1]);
-
-        int pixelY = (pixels[i][j] * this.filterY[0][0]) + (pixels[i + 1][j] * this.filterY[1][0]) +
-          (pixels[i][j + 1] * this.filterY[0][1]) + (pixels[i + 1][j + 1] * this.filterY[1][1]);
-
-        int pixel = (int) Math.sqrt(pixelX*pixelX + pixelY*pixelY);
-
-        if(pixel < 0) {
-          pixels[i][j] = 0;
-        }
-        else if(pixel > 255) {
-          pixels[i][j] = 255;
-        }
-        else {
-          pixels[i][j] = pixel;
-        }
-      }
-    }
-
-    for(i = 0; i < width; i++) {
-      for(j = 0; j < height; j++) {
-        Color color = new Color(pixels[i][j], pixels[i][j], pixels[i][j]);
-        int rgb = color.getRGB();
-        temp.setRGB(i, j, rgb);
-      }
-    }
-
-    this.setImage(temp);
-  }
-
-  /**
-   * Set filter matrices and apply the filter.
-   */
-  public void applyRoberts() {
+  public void setFilterMatrices() {
     int[][] filterX = {
       { 1, 0 },
       { 0, -1 }
@@ -105,6 +48,13 @@ class Roberts extends Convolution {
     };
 
     this.setConvolutionMatrix(filterX, filterY);
+  }
+
+  /**
+   * Set filter matrices and apply the filter.
+   */
+  public void applyRoberts() {
+    this.setFilterMatrices();
     this.processImage();
   }
 }
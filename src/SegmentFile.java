@@ -0,0 +1,388 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary file of segments, for programs reading vectorization results rather than drawing them. The file
+ * starts with the magic bytes {@code JEDS}, a version byte and the image width and height, followed by blocks of
+ * segments. Each block starts with its number of segments, 0 ending the file. A segment is stored as the offset of its
+ * first point from the second point of the previous segment of the block (the origin for the first one) and the offset
+ * of its second point from its first one, each coordinate of the offsets being zigzag encoded (0, -1, 1, -2... become
+ * 0, 1, 2, 3...) into a variable length integer of 7 bits per byte. Detected segments are short and mostly follow each
+ * other, so a segment typically takes 4 bytes.
+ *
+ * Files are written and read through NIO buffers, segments being streamed one at a time both ways.
+ */
+final class SegmentFile {
+  /**
+   * Extension of segment files.
+   */
+  static final String EXTENSION = ".jseg";
+
+  private static final byte[] MAGIC = { 'J', 'E', 'D', 'S' };
+  private static final int VERSION = 1;
+
+  /**
+   * Segments per block.
+   */
+  private static final int BLOCK_SEGMENTS = 4096;
+
+  /**
+   * Greatest size of an encoded segment: four 32 bit variable length integers.
+   */
+  private static final int SEGMENT_BYTES = 4 * 5;
+
+  private static final int BUFFER_BYTES = 1 << 16;
+
+  private SegmentFile() {
+  }
+
+  private static void putVarint(ByteBuffer buffer, int value) {
+    while((value & ~0x7F) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static void putSigned(ByteBuffer buffer, int value) {
+    putVarint(buffer, value << 1 ^ value >> 31);
+  }
+
+  /**
+   * Segment file writer. Segments are encoded into a block buffer, the block being written once full or when the
+   * file is closed.
+   */
+  static final class Output implements VectorOutput {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SEGMENTS * SEGMENT_BYTES);
+    private int blockSegments;
+
+    /**
+     * Last point of the current polyline.
+     */
+    private int lastX, lastY;
+
+    /**
+     * Second point of the last segment of the block.
+     */
+    private int endX, endY;
+
+    private boolean begun, started, closed;
+
+    /**
+     * @param file Output file, replaced if it exists.
+     * @throws IOException If the file could not be created.
+     */
+    public Output(File file) throws IOException {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void begin(int width, int height) throws IOException {
+      if(this.begun) {
+        throw new IllegalStateException("The file is already begun");
+      }
+
+      this.begun = true;
+      this.buffer.put(MAGIC);
+      this.buffer.put((byte) VERSION);
+      putVarint(this.buffer, width);
+      putVarint(this.buffer, height);
+    }
+
+    @Override
+    public void moveTo(int x, int y) {
+      if(!this.begun || this.closed) {
+        throw new IllegalStateException("The file is not begun or already closed");
+      }
+
+      this.started = true;
+      this.lastX = x;
+      this.lastY = y;
+    }
+
+    @Override
+    public void lineTo(int x, int y) throws IOException {
+      if(!this.started) {
+        throw new IllegalStateException("No polyline started");
+      }
+
+      this.add(this.lastX, this.lastY, x, y);
+      this.lastX = x;
+      this.lastY = y;
+    }
+
+    /**
+     * Append a segment.
+     * @throws IOException On write error.
+     */
+    public void add(int x1, int y1, int x2, int y2) throws IOException {
+      if(this.blockSegments == BLOCK_SEGMENTS) {
+        this.writeBlock();
+      }
+
+      putSigned(this.block, x1 - this.endX);
+      putSigned(this.block, y1 - this.endY);
+      putSigned(this.block, x2 - x1);
+      putSigned(this.block, y2 - y1);
+      this.endX = x2;
+      this.endY = y2;
+      this.blockSegments++;
+    }
+
+    private void writeBlock() throws IOException {
+      this.block.flip();
+
+      // The count is written through the buffer, the block itself straight to the channel when it does not fit.
+      if(this.buffer.remaining() < 5 + this.block.remaining()) {
+        this.flush();
+      }
+      putVarint(this.buffer, this.blockSegments);
+      if(this.buffer.remaining() < this.block.remaining()) {
+        this.flush();
+        while(this.block.hasRemaining()) {
+          this.channel.write(this.block);
+        }
+      }
+      else {
+        this.buffer.put(this.block);
+      }
+
+      this.block.clear();
+      this.blockSegments = 0;
+      this.endX = 0;
+      this.endY = 0;
+    }
+
+    private void flush() throws IOException {
+      this.buffer.flip();
+      while(this.buffer.hasRemaining()) {
+        this.channel.write(this.buffer);
+      }
+      this.buffer.clear();
+    }
+
+    /**
+     * Write the last block and the end of the file, then close it.
+     * @throws IOException On write error.
+     */
+    @Override
+    public void close() throws IOException {
+      if(this.closed) {
+        return;
+      }
+
+      try {
+        if(this.begun) {
+          if(this.blockSegments > 0) {
+            this.writeBlock();
+          }
+          if(this.buffer.remaining() < 1) {
+            this.flush();
+          }
+          putVarint(this.buffer, 0);
+          this.flush();
+        }
+      } finally {
+        this.closed = true;
+        this.channel.close();
+      }
+    }
+  }
+
+  /**
+   * Segment file reader, decoding the segments one at a time from a buffer refilled as it is consumed:
+   * <pre>
+   * try(SegmentFile.Input in = new SegmentFile.Input(file)) {
+   *   while(in.next()) {
+   *     draw(in.getX1(), in.getY1(), in.getX2(), in.getY2());
+   *   }
+   * }
+   * </pre>
+   */
+  static final class Input implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private boolean endOfChannel;
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Segments left in the current block, -1 once the end of the file is reached.
+     */
+    private int blockSegments;
+
+    private int x1, y1, x2, y2;
+
+    /**
+     * Open a segment file and read its header.
+     * @param file Segment file.
+     * @throws IOException If the file could not be read or is not a segment file.
+     */
+    public Input(File file) throws IOException {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+      try {
+        this.buffer.flip();
+        this.fill();
+
+        byte[] magic = new byte[MAGIC.length];
+        int i;
+
+        if(this.buffer.remaining() < MAGIC.length + 1) {
+          throw new IOException("Not a segment file: " + file.getName());
+        }
+        this.buffer.get(magic);
+        for(i = 0; i < MAGIC.length; i++) {
+          if(magic[i] != MAGIC[i]) {
+            throw new IOException("Not a segment file: " + file.getName());
+          }
+        }
+
+        int version = this.buffer.get();
+        if(version != VERSION) {
+          throw new IOException("Unsupported segment file version " + version + ": " + file.getName());
+        }
+
+        this.width = this.getVarint();
+        this.height = this.getVarint();
+      } catch (IOException | RuntimeException e) {
+        this.channel.close();
+        throw e;
+      }
+    }
+
+    public int getWidth() {
+      return this.width;
+    }
+
+    public int getHeight() {
+      return this.height;
+    }
+
+    /**
+     * Move to the next segment.
+     * @return False if there are no more segments.
+     * @throws IOException If the file could not be read or is truncated.
+     */
+    public boolean next() throws IOException {
+      if(this.blockSegments < 0) {
+        return false;
+      }
+
+      if(this.blockSegments == 0) {
+        this.blockSegments = this.getVarint();
+
+        if(this.blockSegments == 0) {
+          this.blockSegments = -1;
+          return false;
+        }
+
+        // Offsets start over from the origin in every block.
+        this.x2 = 0;
+        this.y2 = 0;
+      }
+
+      if(this.buffer.remaining() < SEGMENT_BYTES) {
+        this.fill();
+      }
+
+      this.x1 = this.x2 + this.getSigned();
+      this.y1 = this.y2 + this.getSigned();
+      this.x2 = this.x1 + this.getSigned();
+      this.y2 = this.y1 + this.getSigned();
+      this.blockSegments--;
+      return true;
+    }
+
+    public int getX1() {
+      return this.x1;
+    }
+
+    public int getY1() {
+      return this.y1;
+    }
+
+    public int getX2() {
+      return this.x2;
+    }
+
+    public int getY2() {
+      return this.y2;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.channel.close();
+    }
+
+    /**
+     * Move the unread bytes to the start of the buffer and read as many bytes as fit after them.
+     */
+    private void fill() throws IOException {
+      this.buffer.compact();
+      while(!this.endOfChannel && this.buffer.hasRemaining()) {
+        if(this.channel.read(this.buffer) < 0) {
+          this.endOfChannel = true;
+        }
+      }
+      this.buffer.flip();
+    }
+
+    private int getVarint() throws IOException {
+      int value = 0, shift;
+
+      for(shift = 0; shift < 35; shift += 7) {
+        if(!this.buffer.hasRemaining()) {
+          this.fill();
+          if(!this.buffer.hasRemaining()) {
+            throw new EOFException("Truncated segment file");
+          }
+        }
+
+        byte b = this.buffer.get();
+        value |= (b & 0x7F) << shift;
+
+        if(b >= 0) {
+          return value;
+        }
+      }
+
+      throw new IOException("Malformed segment file");
+    }
+
+    private int getSigned() throws IOException {
+      int value = this.getVarint();
+      return value >>> 1 ^ -(value & 1);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Packed R-tree over the segments of a {@link SegmentStore}, answering which segments lie in a region without going
+ * through all of them. The tree is built once, bottom up, with the sort-tile-recursive method: the segments are sorted
+ * by the x of their center into vertical slices, each slice by the y of their center, and packed {@value #NODE_SIZE}
+ * at a time into leaves, whose consecutive runs are packed the same way into the nodes of each level up to the root.
+ * Every node is full but the last of its level, and nodes are kept in a flat array of bounds, level after level from
+ * the leaves up.
+ *
+ * The index is a snapshot: segments added or changed afterwards are not seen.
+ */
+final class SegmentIndex {
+  /**
+   * Entries per node.
+   */
+  private static final int NODE_SIZE = 16;
+
+  /**
+   * Segments in tree order, by their index in the store.
+   */
+  private final int[] order;
+
+  /**
+   * Bounding boxes of the segments in tree order.
+   */
+  private final int[] boxes;
+
+  /**
+   * Bounding boxes of the nodes (min x, min y, max x, max y), leaves first, the root last.
+   */
+  private final int[] nodes;
+
+  /**
+   * Index of the first node of each level, the leaves being level 0, followed by the number of nodes.
+   */
+  private final int[] levels;
+
+  private SegmentIndex(int[] order, int[] boxes, int[] nodes, int[] levels) {
+    this.order = order;
+    this.boxes = boxes;
+    this.nodes = nodes;
+    this.levels = levels;
+  }
+
+  /**
+   * Build the index of the segments of a store.
+   * @param segments Indexed segments.
+   * @return Segment index.
+   */
+  public static SegmentIndex of(SegmentStore segments) {
+    int n = segments.size();
+    int[] boxes = new int[4 * n];
+    int[] order = new int[n];
+    int i;
+
+    for(i = 0; i < n; i++) {
+      int x1 = segments.getX1(i), y1 = segments.getY1(i), x2 = segments.getX2(i), y2 = segments.getY2(i);
+      boxes[4 * i] = Math.min(x1, x2);
+      boxes[4 * i + 1] = Math.min(y1, y2);
+      boxes[4 * i + 2] = Math.max(x1, x2);
+      boxes[4 * i + 3] = Math.max(y1, y2);
+      order[i] = i;
+    }
+
+    sortTileRecursive(boxes, order);
+
+    int[] sorted = new int[4 * n];
+    for(i = 0; i < n; i++) {
+      System.arraycopy(boxes, 4 * order[i], sorted, 4 * i, 4);
+    }
+
+    // Levels are packed from the leaves up, until a single node is left. The leaves being in tile order, the
+    // consecutive nodes of a level are close to each other already.
+    int[] levels = new int[16];
+    int[] nodes = new int[0];
+    int[] entries = sorted;
+    int count = n, level = 0, total = 0;
+
+    do {
+      int parents = Math.max(1, (count + NODE_SIZE - 1) / NODE_SIZE);
+
+      if(level + 1 == levels.length) {
+        levels = Arrays.copyOf(levels, levels.length * 2);
+      }
+      levels[level] = total;
+      nodes = Arrays.copyOf(nodes, 4 * (total + parents));
+
+      for(i = 0; i < parents; i++) {
+        bounds(entries, i * NODE_SIZE, Math.min(count, (i + 1) * NODE_SIZE), nodes, total + i);
+      }
+
+      entries = Arrays.copyOfRange(nodes, 4 * total, 4 * (total + parents));
+      total += parents;
+      count = parents;
+      level++;
+    } while(count > 1);
+
+    levels[level] = total;
+    return new SegmentIndex(order, sorted, nodes, Arrays.copyOf(levels, level + 1));
+  }
+
+  /**
+   * @return Number of indexed segments.
+   */
+  public int size() {
+    return this.order.length;
+  }
+
+  /**
+   * Find the segments whose bounding box meets a rectangle.
+   * @param region Rectangle of pixels.
+   * @return Indexes in the store of the segments found, in increasing order.
+   */
+  public int[] query(Rectangle region) {
+    int[] found = new int[64];
+    int count = 0;
+
+    if(this.order.length == 0 || region.isEmpty()) {
+      return new int[0];
+    }
+
+    int minX = region.x, minY = region.y;
+    int maxX = region.x + region.width - 1, maxY = region.y + region.height - 1;
+    int depth = this.levels.length - 1;
+
+    // Pending nodes as pairs of level and node index, the root being the only node of the top level.
+    int[] stack = new int[2 * (depth + 1) * NODE_SIZE];
+    int top = 0, i;
+
+    stack[top++] = depth - 1;
+    stack[top++] = this.levels[depth - 1];
+
+    while(top > 0) {
+      int node = stack[--top];
+      int level = stack[--top];
+
+      if(!meets(this.nodes, node, minX, minY, maxX, maxY)) {
+        continue;
+      }
+
+      int first = (node - this.levels[level]) * NODE_SIZE;
+
+      if(level == 0) {
+        int last = Math.min(this.order.length, first + NODE_SIZE);
+
+        for(i = first; i < last; i++) {
+          if(meets(this.boxes, i, minX, minY, maxX, maxY)) {
+            if(count == found.length) {
+              found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = this.order[i];
+          }
+        }
+      }
+      else {
+        int children = this.levels[level] - this.levels[level - 1];
+        int last = Math.min(children, first + NODE_SIZE);
+
+        for(i = first; i < last; i++) {
+          stack[top++] = level - 1;
+          stack[top++] = this.levels[level - 1] + i;
+        }
+      }
+    }
+
+    found = Arrays.copyOf(found, count);
+    Arrays.sort(found);
+    return found;
+  }
+
+  /**
+   * @return Bounds of all the segments, or an empty rectangle if there are none.
+   */
+  public Rectangle getBounds() {
+    if(this.order.length == 0) {
+      return new Rectangle();
+    }
+
+    int root = 4 * (this.nodes.length / 4 - 1);
+    return new Rectangle(this.nodes[root], this.nodes[root + 1],
+      this.nodes[root + 2] - this.nodes[root] + 1, this.nodes[root + 3] - this.nodes[root + 1] + 1);
+  }
+
+  private static boolean meets(int[] boxes, int i, int minX, int minY, int maxX, int maxY) {
+    return boxes[4 * i] <= maxX && boxes[4 * i + 2] >= minX && boxes[4 * i + 1] <= maxY && boxes[4 * i + 3] >= minY;
+  }
+
+  /**
+   * Bounding box of a range of boxes, stored at an index of another array.
+   */
+  private static void bounds(int[] boxes, int from, int to, int[] target, int index) {
+    int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+    int i;
+
+    for(i = from; i < to; i++) {
+      minX = Math.min(minX, boxes[4 * i]);
+      minY = Math.min(minY, boxes[4 * i + 1]);
+      maxX = Math.max(maxX, boxes[4 * i + 2]);
+      maxY = Math.max(maxY, boxes[4 * i + 3]);
+    }
+
+    target[4 * index] = minX;
+    target[4 * index + 1] = minY;
+    target[4 * index + 2] = maxX;
+    target[4 * index + 3] = maxY;
+  }
+
+  /**
+   * Sort boxes into tiles: vertical slices of whole nodes by the x of their center, each slice by the y of the
+   * center.
+   * @param boxes Boxes to sort, left in place.
+   * @param order Permutation of the box indexes, sorted.
+   */
+  private static void sortTileRecursive(int[] boxes, int[] order) {
+    int n = order.length;
+    int leaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+    int slices = (int) Math.ceil(Math.sqrt(leaves));
+    int sliceSize = slices * NODE_SIZE;
+    long[] keys = new long[n];
+    int i, s;
+
+    // Keys pack twice the center coordinate in the high half and the box index in the low one.
+    for(i = 0; i < n; i++) {
+      int b = order[i];
+      keys[i] = (long) (boxes[4 * b] + boxes[4 * b + 2]) << 32 | b;
+    }
+    Arrays.sort(keys);
+
+    for(s = 0; s < n; s += sliceSize) {
+      int end = Math.min(n, s + sliceSize);
+
+      for(i = s; i < end; i++) {
+        int b = (int) keys[i];
+        keys[i] = (long) (boxes[4 * b + 1] + boxes[4 * b + 3]) << 32 | b;
+      }
+      Arrays.sort(keys, s, end);
+    }
+
+    for(i = 0; i < n; i++) {
+      order[i] = (int) keys[i];
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable list of segments kept as four parallel arrays of coordinates rather than as {@link Segment} objects,
+ * i. e. 16 bytes per segment and no object to allocate or to follow. Segments are read either by index or with a
+ * {@link Cursor}.
+ */
+final class SegmentStore {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private int[] x1, y1, x2, y2;
+  private int size;
+
+  public SegmentStore() {
+    this.x1 = new int[INITIAL_CAPACITY];
+    this.y1 = new int[INITIAL_CAPACITY];
+    this.x2 = new int[INITIAL_CAPACITY];
+    this.y2 = new int[INITIAL_CAPACITY];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Append a segment.
+   */
+  public void add(int x1, int y1, int x2, int y2) {
+    if(this.size == this.x1.length) {
+      int capacity = this.size + (this.size >> 1);
+      this.x1 = Arrays.copyOf(this.x1, capacity);
+      this.y1 = Arrays.copyOf(this.y1, capacity);
+      this.x2 = Arrays.copyOf(this.x2, capacity);
+      this.y2 = Arrays.copyOf(this.y2, capacity);
+    }
+
+    this.x1[this.size] = x1;
+    this.y1[this.size] = y1;
+    this.x2[this.size] = x2;
+    this.y2[this.size] = y2;
+    this.size++;
+  }
+
+  /**
+   * Replace the segment at an index.
+   */
+  public void set(int index, int x1, int y1, int x2, int y2) {
+    this.check(index);
+    this.x1[index] = x1;
+    this.y1[index] = y1;
+    this.x2[index] = x2;
+    this.y2[index] = y2;
+  }
+
+  public int getX1(int index) {
+    this.check(index);
+    return this.x1[index];
+  }
+
+  public int getY1(int index) {
+    this.check(index);
+    return this.y1[index];
+  }
+
+  public int getX2(int index) {
+    this.check(index);
+    return this.x2[index];
+  }
+
+  public int getY2(int index) {
+    this.check(index);
+    return this.y2[index];
+  }
+
+  private void check(int index) {
+    if(index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("Index " + index + ", size " + this.size);
+    }
+  }
+
+  public void clear() {
+    this.size = 0;
+  }
+
+  /**
+   * @return New cursor placed before the first segment.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * @return Read-only view of the store as a list, creating {@link Segment} objects only as they are read.
+   */
+  public List<Segment> asList() {
+    return new AbstractList<Segment>() {
+      @Override
+      public Segment get(int index) {
+        return new Segment(getX1(index), getX2(index), getY1(index), getY2(index));
+      }
+
+      @Override
+      public int size() {
+        return SegmentStore.this.size;
+      }
+    };
+  }
+
+  /**
+   * Forward iteration over the segments of the store:
+   * <pre>
+   * SegmentStore.Cursor cursor = store.cursor();
+   * while(cursor.next()) {
+   *   draw(cursor.getX1(), cursor.getY1(), cursor.getX2(), cursor.getY2());
+   * }
+   * </pre>
+   */
+  final class Cursor {
+    private int index = -1;
+
+    private Cursor() {
+    }
+
+    /**
+     * Move to the next segment.
+     * @return False if there are no more segments.
+     */
+    public boolean next() {
+      if(this.index + 1 >= size) {
+        this.index = size;
+        return false;
+      }
+      this.index++;
+      return true;
+    }
+
+    public int getIndex() {
+      return this.index;
+    }
+
+    public int getX1() {
+      return x1[this.index];
+    }
+
+    public int getY1() {
+      return y1[this.index];
+    }
+
+    public int getX2() {
+      return x2[this.index];
+    }
+
+    public int getY2() {
+      return y2[this.index];
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Pair of filter matrices which can both be written as the outer product of a column and a row vector
+ * (e. g. the Sobel X matrix is [1, 2, 1] x [-1, 0, 1]). Such a pair is applied in two one-dimensional passes:
+ * a horizontal pass computing, for every row, the sums weighted by the row vectors and a vertical pass combining
+ * three (or matrix size) of those row sums with the column vectors. Each row sum is computed once and shared by
+ * all the output rows whose window covers it, and zero weights are skipped altogether. As all the arithmetic is
+ * done on integers, the result is exactly the one of the full two-dimensional window.
+ */
+final class SeparableKernel {
+  /**
+   * Non-zero weights and their offsets in the column and row vectors of both matrices.
+   */
+  private final int[] columnXOffsets, columnXWeights, rowXOffsets, rowXWeights;
+  private final int[] columnYOffsets, columnYWeights, rowYOffsets, rowYWeights;
+
+  /**
+   * Full column and row vectors, used by the unrolled 3x3 path.
+   */
+  private final int[][] factorsX, factorsY;
+
+  /**
+   * Filter matrix size.
+   */
+  private final int size;
+
+  private SeparableKernel(int[][] factorsX, int[][] factorsY, int size) {
+    this.size = size;
+    this.factorsX = factorsX;
+    this.factorsY = factorsY;
+    this.columnXOffsets = offsets(factorsX[0]);
+    this.columnXWeights = weights(factorsX[0]);
+    this.rowXOffsets = offsets(factorsX[1]);
+    this.rowXWeights = weights(factorsX[1]);
+    this.columnYOffsets = offsets(factorsY[0]);
+    this.columnYWeights = weights(factorsY[0]);
+    this.rowYOffsets = offsets(factorsY[1]);
+    this.rowYWeights = weights(factorsY[1]);
+  }
+
+  /**
+   * Try to split both filter matrices into column and row vectors.
+   * @param filterX X-axis filter matrix.
+   * @param filterY Y-axis filter matrix.
+   * @return The separable form of the filter or null if one of the matrices is not separable.
+   */
+  static SeparableKernel of(int[][] filterX, int[][] filterY) {
+    int[][] factorsX = factor(filterX);
+    int[][] factorsY = factor(filterY);
+
+    if(factorsX == null || factorsY == null) {
+      return null;
+    }
+
+    return new SeparableKernel(factorsX, factorsY, filterX.length);
+  }
+
+  /**
+   * Find integer vectors column and row such that matrix[r][c] == column[r] * row[c].
+   * @param matrix Square filter matrix.
+   * @return Array holding the column and the row vector or null if there are none.
+   */
+  static int[][] factor(int[][] matrix) {
+    int size = matrix.length;
+    int[] column = new int[size];
+    int[] row = new int[size];
+    int r, c, pivotRow = -1, pivotColumn = -1;
+
+    for(r = 0; r < size && pivotRow < 0; r++) {
+      for(c = 0; c < size; c++) {
+        if(matrix[r][c] != 0) {
+          pivotRow = r;
+          pivotColumn = c;
+          break;
+        }
+      }
+    }
+
+    if(pivotRow < 0) {
+      return null;
+    }
+
+    int divisor = 0;
+    for(c = 0; c < size; c++) {
+      divisor = gcd(divisor, Math.abs(matrix[pivotRow][c]));
+    }
+
+    for(c = 0; c < size; c++) {
+      row[c] = matrix[pivotRow][c] / divisor;
+    }
+
+    for(r = 0; r < size; r++) {
+      if(matrix[r][pivotColumn] % row[pivotColumn] != 0) {
+        return null;
+      }
+      column[r] = matrix[r][pivotColumn] / row[pivotColumn];
+    }
+
+    for(r = 0; r < size; r++) {
+      for(c = 0; c < size; c++) {
+        if(column[r] * row[c] != matrix[r][c]) {
+          return null;
+        }
+      }
+    }
+
+    return new int[][] { column, row };
+  }
+
+  private static int gcd(int a, int b) {
+    while(b != 0) {
+      int t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  private static int[] offsets(int[] vector) {
+    int[] offsets = new int[count(vector)];
+    int i, k = 0;
+
+    for(i = 0; i < vector.length; i++) {
+      if(vector[i] != 0) {
+        offsets[k++] = i;
+      }
+    }
+    return offsets;
+  }
+
+  private static int[] weights(int[] vector) {
+    int[] weights = new int[count(vector)];
+    int i, k = 0;
+
+    for(i = 0; i < vector.length; i++) {
+      if(vector[i] != 0) {
+        weights[k++] = vector[i];
+      }
+    }
+    return weights;
+  }
+
+  private static int count(int[] vector) {
+    int i, count = 0;
+
+    for(i = 0; i < vector.length; i++) {
+      if(vector[i] != 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Separable counterpart of {@link Convolution#convolve(int[], int[], int, int, int, int, int)}.
+   * @param filter Filter the magnitude of the responses is computed by.
+   */
+  void convolve(Convolution filter, int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow,
+                int squaredThreshold) {
+    int span = width - this.size + 1;
+    int[] slotsX = new int[this.columnXOffsets.length];
+    int[] slotsY = new int[this.columnYOffsets.length];
+    int x, y, k;
+
+    if(span <= 0 || height < this.size) {
+      System.arraycopy(pixels, fromRow * width, gradient, fromRow * width, (toRow - fromRow) * width);
+      return;
+    }
+
+    if(this.size == 3) {
+      this.convolve3(filter, pixels, gradient, width, height, fromRow, toRow, squaredThreshold);
+      return;
+    }
+
+    // Row sums of the last 'size' rows, indexed by row modulo size.
+    int[] sumsX = new int[this.size * span];
+    int[] sumsY = new int[this.size * span];
+    int lastWindowRow = Math.min(toRow, height - this.size + 1);
+
+    for(y = fromRow; y < Math.min(fromRow + this.size - 1, height); y++) {
+      this.rowSums(pixels, sumsX, sumsY, width, span, y);
+    }
+
+    for(y = fromRow; y < toRow; y++) {
+      int row = y * width;
+
+      if(y >= lastWindowRow) {
+        System.arraycopy(pixels, row, gradient, row, width);
+        continue;
+      }
+
+      this.rowSums(pixels, sumsX, sumsY, width, span, y + this.size - 1);
+
+      for(k = 0; k < slotsX.length; k++) {
+        slotsX[k] = ((y + this.columnXOffsets[k]) % this.size) * span;
+      }
+
+      for(k = 0; k < slotsY.length; k++) {
+        slotsY[k] = ((y + this.columnYOffsets[k]) % this.size) * span;
+      }
+
+      for(x = 0; x < span; x++) {
+        int pixelX = 0, pixelY = 0;
+
+        for(k = 0; k < slotsX.length; k++) {
+          pixelX += this.columnXWeights[k] * sumsX[slotsX[k] + x];
+        }
+
+        for(k = 0; k < slotsY.length; k++) {
+          pixelY += this.columnYWeights[k] * sumsY[slotsY[k] + x];
+        }
+
+        gradient[row + x] = filter.magnitude(pixelX, pixelY, squaredThreshold);
+      }
+
+      for(; x < width; x++) {
+        gradient[row + x] = pixels[row + x];
+      }
+    }
+  }
+
+  /**
+   * Unrolled version of the two passes for 3x3 matrices, by far the most common size.
+   */
+  private void convolve3(Convolution filter, int[] pixels, int[] gradient, int width, int height, int fromRow, int toRow,
+                         int squaredThreshold) {
+    int cx0 = this.factorsX[0][0], cx1 = this.factorsX[0][1], cx2 = this.factorsX[0][2];
+    int rx0 = this.factorsX[1][0], rx1 = this.factorsX[1][1], rx2 = this.factorsX[1][2];
+    int cy0 = this.factorsY[0][0], cy1 = this.factorsY[0][1], cy2 = this.factorsY[0][2];
+    int ry0 = this.factorsY[1][0], ry1 = this.factorsY[1][1], ry2 = this.factorsY[1][2];
+    int span = width - 2;
+    int[] sumsX = new int[3 * span];
+    int[] sumsY = new int[3 * span];
+    int lastWindowRow = Math.min(toRow, height - 2);
+    int x, y;
+
+    for(y = fromRow; y < toRow; y++) {
+      int row = y * width;
+
+      if(y >= lastWindowRow) {
+        System.arraycopy(pixels, row, gradient, row, width);
+        continue;
+      }
+
+      // Horizontal pass: compute the sums of the rows entering the window.
+      int r = (y == fromRow) ? y : y + 2;
+      for(; r <= y + 2; r++) {
+        int slot = (r % 3) * span;
+        int p = r * width;
+        for(x = 0; x < span; x++, p++) {
+          int p0 = pixels[p], p1 = pixels[p + 1], p2 = pixels[p + 2];
+          sumsX[slot + x] = rx0 * p0 + rx1 * p1 + rx2 * p2;
+          sumsY[slot + x] = ry0 * p0 + ry1 * p1 + ry2 * p2;
+        }
+      }
+
+      // Vertical pass.
+      int s0 = (y % 3) * span, s1 = ((y + 1) % 3) * span, s2 = ((y + 2) % 3) * span;
+      for(x = 0; x < span; x++) {
+        int pixelX = cx0 * sumsX[s0 + x] + cx1 * sumsX[s1 + x] + cx2 * sumsX[s2 + x];
+        int pixelY = cy0 * sumsY[s0 + x] + cy1 * sumsY[s1 + x] + cy2 * sumsY[s2 + x];
+
+        gradient[row + x] = filter.magnitude(pixelX, pixelY, squaredThreshold);
+      }
+
+      for(; x < width; x++) {
+        gradient[row + x] = pixels[row + x];
+      }
+    }
+  }
+
+  /**
+   * Horizontal pass over one image row.
+   */
+  private void rowSums(int[] pixels, int[] sumsX, int[] sumsY, int width, int span, int y) {
+    int slot = (y % this.size) * span;
+    int row = y * width;
+    int x, k;
+
+    for(x = 0; x < span; x++) {
+      int sumX = 0, sumY = 0;
+
+      for(k = 0; k < this.rowXOffsets.length; k++) {
+        sumX += this.rowXWeights[k] * pixels[row + x + this.rowXOffsets[k]];
+      }
+
+      for(k = 0; k < this.rowYOffsets.length; k++) {
+        sumY += this.rowYWeights[k] * pixels[row + x + this.rowYOffsets[k]];
+      }
+
+      sumsX[slot + x] = sumX;
+      sumsY[slot + x] = sumY;
+    }
+  }
+}
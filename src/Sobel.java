@@ -34,9 +34,10 @@ class Sobel extends Convolution {
   }
 
   /**
-   * Set filter matrices and apply the filter.
+   * Set filter matrices.
    */
-  public void applySobel() {
+  @Override
+  public void setFilterMatrices() {
     int[][] filterX = {
       { -1, 0, 1 },
       { -2, 0, 2 },
@@ -49,6 +50,13 @@ class Sobel extends Convolution {
     };
 
     this.setConvolutionMatrix(filterX, filterY);
+  }
+
+  /**
+   * Set filter matrices and apply the filter.
+   */
+  public void applySobel() {
+    this.setFilterMatrices();
     this.processImage();
   }
 }
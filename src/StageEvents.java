@@ -0,0 +1,65 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Flight recorder events of the pipeline stages. The implementation, {@code JfrStageEvents}, is built on the
+ * {@code jdk.jfr} module of JDK 11 and newer: it is only compiled and loaded when the module is available, the stages
+ * being recorded by the metrics alone otherwise.
+ * @see Telemetry
+ */
+interface StageEvents {
+  /**
+   * Start the event of a stage.
+   * @return The started event, or null if no recording is running or the event is disabled in all of them.
+   */
+  Object begin();
+
+  /**
+   * Fill in a started event and commit it, unless it lasted less than the threshold of the recordings.
+   * @param event Event returned by {@link #begin()}.
+   * @param stage Stage name.
+   * @param width Image (or strip) width.
+   * @param height Image (or strip) height.
+   * @param filter Filter name, or null if the stage does not filter.
+   * @param threshold Black and white threshold, or -1 if the stage does not threshold.
+   * @param segments Number of segments vectorized or written.
+   * @param bytes Number of bytes written.
+   */
+  void commit(Object event, String stage, int width, int height, String filter, int threshold, long segments,
+              long bytes);
+
+  /**
+   * Load the flight recorder events unless disabled by the {@code jed.jfr} system property set to false.
+   * @return The events or null if they are disabled, were not compiled or the flight recorder is not available.
+   */
+  static StageEvents load() {
+    if(!Boolean.parseBoolean(System.getProperty("jed.jfr", "true"))) {
+      return null;
+    }
+
+    try {
+      return (StageEvents) Class.forName("JfrStageEvents").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
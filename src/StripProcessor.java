@@ -0,0 +1,299 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Out-of-core processing of images too large to be decoded at once. The image is decoded by horizontal strips
+ * through {@link ImageReadParam#setSourceRegion(Rectangle)}, each strip being decoded together with the few rows
+ * following it (the halo) the filter window needs. Every strip is filtered, thresholded and vectorized on its own
+ * and its results are appended to the thresholded image (a PBM file) and to the SVG document right away, so the
+ * memory used only depends on the strip size.
+ *
+ * Binary PGM images skip decoding altogether: their rows are read straight from the memory-mapped file into a
+ * rolling window of gray levels (see {@link Netpbm}). The thresholded image is written to a memory-mapped PBM file
+ * in both cases, and the gradient magnitude, if asked for, to a memory-mapped PGM file.
+ *
+ * The thresholded image is exactly the one of the whole image. Segments crossing a strip boundary are split in two
+ * at the boundary. Strips are filtered on the calling thread, parallelism coming from processing several images at
+ * once as the batch mode does.
+ */
+class StripProcessor {
+  /**
+   * Filter name, as accepted by {@link Convolution#create(String, BufferedImage, int)}.
+   */
+  private final String filter;
+
+  /**
+   * Black and white threshold.
+   */
+  private final int threshold;
+
+  /**
+   * Number of image rows per strip.
+   */
+  private final int stripRows;
+
+  /**
+   * Gradient magnitude mode of the filter.
+   */
+  private Magnitude magnitude = Magnitude.EXACT;
+
+  /**
+   * Polyline simplification tolerance, negative to write segments.
+   * @see Vectorization#setSimplification(double)
+   */
+  private double simplification = -1;
+
+  /**
+   * Vectorization engine of the strips.
+   */
+  private Vectorization.Engine engine = Vectorization.Engine.SCAN;
+
+  /**
+   * Size of the last processed image.
+   */
+  private int width, height;
+
+  public StripProcessor(String filter, int threshold, int stripRows) {
+    if(threshold < 0 || threshold > 255) {
+      throw new IllegalArgumentException("Threshold must be in range 0 - 255, got " + threshold);
+    }
+    if(stripRows < 1) {
+      throw new IllegalArgumentException("Strips must have at least one row, got " + stripRows);
+    }
+    this.filter = filter;
+    this.threshold = threshold;
+    this.stripRows = stripRows;
+  }
+
+  public void setMagnitude(Magnitude magnitude) {
+    if(magnitude == null) {
+      throw new IllegalArgumentException("Magnitude mode must not be null");
+    }
+    this.magnitude = magnitude;
+  }
+
+  public void setSimplification(double tolerance) {
+    if(Double.isNaN(tolerance)) {
+      throw new IllegalArgumentException("Tolerance must be a number");
+    }
+    this.simplification = tolerance;
+  }
+
+  public void setEngine(Vectorization.Engine engine) {
+    if(engine == null) {
+      throw new IllegalArgumentException("Engine must not be null");
+    }
+    this.engine = engine;
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Process an image file strip by strip.
+   * @param input Source image file.
+   * @param bitmap Thresholded image output (binary PBM), or null not to write it.
+   * @param gradient Gradient magnitude output (binary PGM), or null not to write it.
+   * @param vectors Vectorization output, see {@link VectorOutput#open(File)}.
+   * @return Number of segments written.
+   * @throws IOException If the image could not be read or the outputs could not be written.
+   */
+  public int process(File input, File bitmap, File gradient, File vectors) throws IOException {
+    if(Netpbm.isPgm(input)) {
+      return this.processPgm(input, bitmap, gradient, vectors);
+    }
+
+    int segments = 0;
+
+    try(ImageInputStream in = ImageIO.createImageInputStream(input)) {
+      if(in == null) {
+        throw new IOException("Cannot open " + input);
+      }
+
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+      if(!readers.hasNext()) {
+        throw new IOException("Unsupported image format: " + input.getName());
+      }
+
+      ImageReader reader = readers.next();
+
+      try {
+        reader.setInput(in);
+
+        int width = this.width = reader.getWidth(0);
+        int height = this.height = reader.getHeight(0);
+
+        try(Netpbm.Output pbm = bitmap == null ? null : new Netpbm.Output(bitmap, width, height, true);
+            Netpbm.Output pgm = gradient == null ? null : new Netpbm.Output(gradient, width, height, false);
+            VectorOutput out = VectorOutput.open(vectors)) {
+          int halo = Convolution.matrixSize(this.filter) - 1;
+          ImageReadParam param = reader.getDefaultReadParam();
+          int fromRow;
+
+          out.begin(width, height);
+
+          for(fromRow = 0; fromRow < height; fromRow += this.stripRows) {
+            int stripRows = Math.min(this.stripRows, height - fromRow);
+            int decodedRows = Math.min(stripRows + halo, height - fromRow);
+
+            Telemetry.Span decode = Telemetry.start(Telemetry.Stage.DECODE);
+            param.setSourceRegion(new Rectangle(0, fromRow, width, decodedRows));
+            BufferedImage strip = RasterAccess.toDirect(reader.read(0, param));
+            decode.size(width, decodedRows).end();
+
+            // Rows of the halo are only read by the filter window, their own result belongs to the next strip.
+            // The fused pass does not keep the gradient, the separate ones are run when it is written.
+            Convolution convolution = Convolution.create(this.filter, strip, this.threshold);
+            convolution.setParallelism(1);
+            convolution.setFused(pgm == null);
+            convolution.setBitmapOnly(true);
+            convolution.setReportedRows(stripRows);
+            convolution.setMagnitude(this.magnitude);
+            convolution.applyFilter();
+
+            if(pgm != null) {
+              pgm.writeRows(fromRow, fromRow + stripRows, convolution.getGradient(), 0, this.threshold);
+              convolution.applyThreshold();
+            }
+
+            Bitmap thresholded = convolution.getBitmap().topRows(stripRows);
+
+            if(pbm != null) {
+              pbm.writeRows(fromRow, thresholded, stripRows);
+            }
+
+            segments += this.vectorize(thresholded, fromRow, out);
+          }
+        }
+      } finally {
+        reader.dispose();
+      }
+    }
+
+    written(bitmap, gradient, vectors);
+    return segments;
+  }
+
+  /**
+   * Process a binary PGM image strip by strip, reading its rows from the memory-mapped file. The rows are convolved
+   * in a rolling window, the halo rows of a strip being kept as the top of the next one so every row is read once.
+   */
+  private int processPgm(File input, File bitmap, File gradient, File vectors) throws IOException {
+    int segments = 0;
+
+    try(Netpbm.Input in = new Netpbm.Input(input)) {
+      int width = this.width = in.getWidth();
+      int height = this.height = in.getHeight();
+
+      try(Netpbm.Output pbm = bitmap == null ? null : new Netpbm.Output(bitmap, width, height, true);
+          Netpbm.Output pgm = gradient == null ? null : new Netpbm.Output(gradient, width, height, false);
+          VectorOutput out = VectorOutput.open(vectors)) {
+        Convolution convolution = Convolution.create(this.filter, null, this.threshold);
+        int halo = convolution.getMatrixSize() - 1;
+        int blockRows = Math.min(this.stripRows, height);
+        int[] window = new int[(blockRows + halo) * width];
+        int[] magnitudes = new int[window.length];
+        int fromRow, filled = 0;
+
+        convolution.setParallelism(1);
+        convolution.setMagnitude(this.magnitude);
+        convolution.setFilterMatrices();
+        out.begin(width, height);
+
+        for(fromRow = 0; fromRow < height; fromRow += blockRows) {
+          int windowRows = Math.min(blockRows + halo, height - fromRow);
+          int stripRows = Math.min(blockRows, height - fromRow);
+
+          Telemetry.Span decode = Telemetry.start(Telemetry.Stage.DECODE);
+          in.readRows(fromRow + filled, fromRow + windowRows, window, filled * width);
+          decode.size(width, windowRows - filled).end();
+
+          // The magnitude itself is only computed when it is written, thresholding it giving the same bitmap.
+          Telemetry.Span filtering = Telemetry.start(Telemetry.Stage.CONVOLUTION);
+          if(pgm != null) {
+            convolution.convolveAll(window, magnitudes, width, windowRows, -1);
+          }
+          else {
+            convolution.convolveThresholded(window, magnitudes, width, windowRows);
+          }
+          filtering.size(width, stripRows).filter(convolution.getName(), this.threshold).end();
+
+          if(pgm != null) {
+            pgm.writeRows(fromRow, fromRow + stripRows, magnitudes, 0, this.threshold);
+          }
+          if(pbm != null) {
+            pbm.writeRows(fromRow, fromRow + stripRows, magnitudes, 0, this.threshold);
+          }
+
+          segments += this.vectorize(Bitmap.threshold(magnitudes, width, stripRows, this.threshold), fromRow, out);
+
+          // Keep the halo rows already read as the top of the next window.
+          filled = windowRows - stripRows;
+          System.arraycopy(window, stripRows * width, window, 0, filled * width);
+        }
+      }
+    }
+
+    written(bitmap, gradient, vectors);
+    return segments;
+  }
+
+  /**
+   * Count the outputs, written a strip at a time, in the bytes written by the telemetry.
+   */
+  private static void written(File bitmap, File gradient, File vectors) {
+    Telemetry.written((bitmap != null ? bitmap.length() : 0) + (gradient != null ? gradient.length() : 0) +
+      vectors.length());
+  }
+
+  /**
+   * Vectorize a thresholded strip and append its segments to the vector output.
+   * @return Number of segments of the strip.
+   */
+  private int vectorize(Bitmap thresholded, int fromRow, VectorOutput out) throws IOException {
+    Vectorization vectorization = new Vectorization(thresholded);
+    vectorization.setEngine(this.engine);
+    vectorization.processImage(fromRow == 0 ? 1 : 0);
+    vectorization.setSimplification(this.simplification);
+
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.WRITE);
+    vectorization.writeElements(out, fromRow);
+    span.size(thresholded.getWidth(), thresholded.getHeight()).segments(vectorization.getSegmentStore().size()).end();
+
+    return vectorization.getSegmentStore().size();
+  }
+}
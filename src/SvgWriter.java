@@ -0,0 +1,256 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming SVG document writer. Lines are written as they come as subpaths of {@code <path>} elements: an absolute
+ * move to the first point followed by relative lines to the next ones (e. g. {@code M10 20l5 0 0-3}), inside a group
+ * holding the stroke style shared by all of them. Numbers are formatted straight into a reusable byte buffer, so
+ * writing does not create any object.
+ *
+ * The document is complete once {@link #close()} is called. Files whose name ends with .svgz are compressed.
+ */
+final class SvgWriter implements VectorOutput {
+  /**
+   * Subpaths per path element, so that no element grows without bound.
+   */
+  private static final int PATH_COMMANDS = 4096;
+
+  private final OutputStream out;
+  private final byte[] buffer = new byte[1 << 16];
+  private int length;
+
+  /**
+   * Number of subpaths of the open path element, -1 if there is none.
+   */
+  private int commands = -1;
+
+  /**
+   * Last point of the current subpath, relative lines start from.
+   */
+  private int lastX, lastY;
+
+  /**
+   * Whether the subpath has no line yet.
+   */
+  private boolean moved;
+
+  /**
+   * Whether the last byte written is a command letter, which needs no separator before a number.
+   */
+  private boolean afterCommand;
+
+  private boolean begun, closed;
+
+  /**
+   * @param out Stream the document is written to, closed with the writer.
+   */
+  public SvgWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Create a document file, compressed with gzip if its name ends with .svgz.
+   * @param file Output file.
+   * @return Writer of the file.
+   * @throws IOException If the file could not be created.
+   */
+  public static SvgWriter open(File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+
+    if(file.getName().toLowerCase(Locale.ROOT).endsWith(".svgz")) {
+      try {
+        out = new GZIPOutputStream(out, 1 << 16);
+      } catch (IOException e) {
+        out.close();
+        throw e;
+      }
+    }
+
+    return new SvgWriter(out);
+  }
+
+  /**
+   * Write the document header.
+   * @param width Image width.
+   * @param height Image height.
+   * @throws IOException On write error.
+   */
+  @Override
+  public void begin(int width, int height) throws IOException {
+    if(this.begun) {
+      throw new IllegalStateException("The document is already begun");
+    }
+
+    this.begun = true;
+    this.ascii("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+    this.number(width);
+    this.ascii("\" height=\"");
+    this.number(height);
+    this.ascii("\">\n<g fill=\"none\" stroke=\"black\" stroke-width=\"1\">\n");
+  }
+
+  /**
+   * Start a new subpath.
+   * @throws IOException On write error.
+   */
+  @Override
+  public void moveTo(int x, int y) throws IOException {
+    if(!this.begun || this.closed) {
+      throw new IllegalStateException("The document is not begun or already closed");
+    }
+
+    if(this.commands == PATH_COMMANDS) {
+      this.ascii("\"/>\n");
+      this.commands = -1;
+    }
+
+    if(this.commands < 0) {
+      this.ascii("<path d=\"");
+      this.commands = 0;
+    }
+
+    this.command('M');
+    this.coordinate(x);
+    this.coordinate(y);
+    this.commands++;
+    this.moved = true;
+    this.lastX = x;
+    this.lastY = y;
+  }
+
+  /**
+   * Continue the current subpath with a line to a point.
+   * @throws IOException On write error.
+   */
+  @Override
+  public void lineTo(int x, int y) throws IOException {
+    if(this.commands < 0) {
+      throw new IllegalStateException("No subpath started");
+    }
+
+    // Lines following each other share the command letter of the first one.
+    if(this.moved) {
+      this.command('l');
+      this.moved = false;
+    }
+
+    this.coordinate(x - this.lastX);
+    this.coordinate(y - this.lastY);
+    this.lastX = x;
+    this.lastY = y;
+  }
+
+  /**
+   * Close the open elements and the document, then the stream.
+   * @throws IOException On write error.
+   */
+  @Override
+  public void close() throws IOException {
+    if(this.closed) {
+      return;
+    }
+
+    try {
+      if(this.commands >= 0) {
+        this.ascii("\"/>\n");
+      }
+      if(this.begun) {
+        this.ascii("</g>\n</svg>\n");
+      }
+      this.flush();
+    } finally {
+      this.closed = true;
+      this.out.close();
+    }
+  }
+
+  private void command(char letter) throws IOException {
+    this.reserve(1);
+    this.buffer[this.length++] = (byte) letter;
+    this.afterCommand = true;
+  }
+
+  /**
+   * Write a path coordinate, preceded by a space unless a command letter or its minus sign separates it from the
+   * previous one.
+   */
+  private void coordinate(int value) throws IOException {
+    this.reserve(12);
+
+    if(!this.afterCommand && value >= 0) {
+      this.buffer[this.length++] = ' ';
+    }
+
+    this.number(value);
+  }
+
+  private void number(int value) throws IOException {
+    this.reserve(11);
+    this.afterCommand = false;
+
+    long magnitude = value;
+    if(magnitude < 0) {
+      this.buffer[this.length++] = '-';
+      magnitude = -magnitude;
+    }
+
+    int start = this.length, end;
+    do {
+      this.buffer[this.length++] = (byte) ('0' + magnitude % 10);
+      magnitude /= 10;
+    } while(magnitude != 0);
+
+    // Digits were written from the least significant one.
+    for(end = this.length - 1; start < end; start++, end--) {
+      byte digit = this.buffer[start];
+      this.buffer[start] = this.buffer[end];
+      this.buffer[end] = digit;
+    }
+  }
+
+  private void ascii(String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+    this.reserve(bytes.length);
+    System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+    this.length += bytes.length;
+    this.afterCommand = false;
+  }
+
+  private void reserve(int bytes) throws IOException {
+    if(this.length + bytes > this.buffer.length) {
+      this.flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    this.out.write(this.buffer, 0, this.length);
+    this.length = 0;
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing of the pipeline stages, reported as flight recorder events (see {@link StageEvents}) and as cumulative
+ * counters of the {@link MetricsMXBean}. A stage is timed by a {@link Span} started before and ended after it.
+ * While no recording runs and the metrics are disabled, starting a span returns a shared inert span and nothing is
+ * timed nor allocated.
+ */
+final class Telemetry {
+  /**
+   * Pipeline stages. The fused pass of the filters converts, filters and thresholds at once and is reported as
+   * {@link #CONVOLUTION} only.
+   */
+  enum Stage {
+    DECODE, GRAYSCALE, CONVOLUTION, THRESHOLD, VECTORIZATION, WRITE;
+
+    /**
+     * Name used by the events and the metrics.
+     */
+    private final String label = this.name().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Flight recorder events, or null if they are not available.
+   */
+  private static final StageEvents EVENTS = StageEvents.load();
+
+  /**
+   * Metrics, or null if they are disabled.
+   */
+  private static final Metrics METRICS = Metrics.register();
+
+  private static final Span DISABLED = new Span(null, null, 0);
+
+  private Telemetry() {
+  }
+
+  /**
+   * Start timing a stage.
+   * @param stage Stage about to run.
+   * @return Span to end once the stage is done.
+   */
+  static Span start(Stage stage) {
+    Object event = EVENTS != null ? EVENTS.begin() : null;
+
+    if(event == null && METRICS == null) {
+      return DISABLED;
+    }
+
+    return new Span(stage, event, System.nanoTime());
+  }
+
+  /**
+   * Count bytes written outside of a {@link Stage#WRITE} span, e. g. by outputs written a strip at a time.
+   * @param bytes Number of bytes written.
+   */
+  static void written(long bytes) {
+    if(METRICS != null) {
+      METRICS.bytes.add(bytes);
+    }
+  }
+
+  /**
+   * Run of a stage. The attributes are set once the stage is done, those not relevant to the stage being left
+   * unset.
+   */
+  static final class Span {
+    private final Stage stage;
+    private final Object event;
+    private final long start;
+    private int width, height, threshold = -1;
+    private String filter;
+    private long segments, bytes;
+
+    private Span(Stage stage, Object event, long start) {
+      this.stage = stage;
+      this.event = event;
+      this.start = start;
+    }
+
+    Span size(int width, int height) {
+      if(this.stage != null) {
+        this.width = width;
+        this.height = height;
+      }
+      return this;
+    }
+
+    Span filter(String filter, int threshold) {
+      if(this.stage != null) {
+        this.filter = filter;
+        this.threshold = threshold;
+      }
+      return this;
+    }
+
+    Span segments(long segments) {
+      if(this.stage != null) {
+        this.segments = segments;
+      }
+      return this;
+    }
+
+    Span bytes(long bytes) {
+      if(this.stage != null) {
+        this.bytes = bytes;
+      }
+      return this;
+    }
+
+    /**
+     * End the stage, committing its event and adding it to the metrics. A stage failing before its span is ended
+     * is not reported.
+     */
+    void end() {
+      if(this.stage == null) {
+        return;
+      }
+
+      long nanos = System.nanoTime() - this.start;
+
+      if(METRICS != null) {
+        METRICS.add(this, nanos);
+      }
+      if(this.event != null) {
+        EVENTS.commit(this.event, this.stage.label, this.width, this.height, this.filter, this.threshold,
+          this.segments, this.bytes);
+      }
+    }
+  }
+
+  /**
+   * Counters updated by all the threads running stages, read through JMX.
+   */
+  private static final class Metrics implements MetricsMXBean {
+    private static final long[] BOUNDS_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+    private static final int BUCKETS = BOUNDS_MILLIS.length + 1;
+
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder segments = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLongArray counts = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+
+    /**
+     * Runs by stage and latency bucket, indexed by stage times {@link #BUCKETS} plus bucket.
+     */
+    private final AtomicLongArray histograms = new AtomicLongArray(Stage.values().length * BUCKETS);
+
+    /**
+     * Register the metrics if enabled by the {@code jed.metrics} system property.
+     * @return The registered metrics, or null if they are disabled or could not be registered.
+     */
+    static Metrics register() {
+      if(!Boolean.getBoolean("jed.metrics")) {
+        return null;
+      }
+
+      Metrics metrics = new Metrics();
+
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("JED:type=Metrics"));
+      } catch (JMException e) {
+        System.err.println("Metrics disabled: " + e.getMessage());
+        return null;
+      }
+
+      return metrics;
+    }
+
+    void add(Span span, long nanos) {
+      int stage = span.stage.ordinal();
+      int bucket = 0;
+
+      while(bucket < BOUNDS_MILLIS.length && nanos > BOUNDS_MILLIS[bucket] * 1000000) {
+        bucket++;
+      }
+
+      this.counts.incrementAndGet(stage);
+      this.nanos.addAndGet(stage, nanos);
+      this.histograms.incrementAndGet(stage * BUCKETS + bucket);
+
+      if(span.stage == Stage.CONVOLUTION) {
+        this.pixels.add((long) span.width * span.height);
+      }
+      else if(span.stage == Stage.VECTORIZATION) {
+        this.segments.add(span.segments);
+      }
+      this.bytes.add(span.bytes);
+    }
+
+    @Override
+    public long getPixelsProcessed() {
+      return this.pixels.sum();
+    }
+
+    @Override
+    public long getSegmentsEmitted() {
+      return this.segments.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+      return this.bytes.sum();
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+      return byStage(this.counts);
+    }
+
+    @Override
+    public Map<String, Long> getStageNanos() {
+      return byStage(this.nanos);
+    }
+
+    private static Map<String, Long> byStage(AtomicLongArray values) {
+      Map<String, Long> map = new LinkedHashMap<>();
+
+      for(Stage stage : Stage.values()) {
+        map.put(stage.label, values.get(stage.ordinal()));
+      }
+      return map;
+    }
+
+    @Override
+    public long[] getLatencyBoundsMillis() {
+      return BOUNDS_MILLIS.clone();
+    }
+
+    @Override
+    public Map<String, long[]> getLatencyHistograms() {
+      Map<String, long[]> map = new LinkedHashMap<>();
+      int b;
+
+      for(Stage stage : Stage.values()) {
+        long[] histogram = new long[BUCKETS];
+
+        for(b = 0; b < BUCKETS; b++) {
+          histogram[b] = this.histograms.get(stage.ordinal() * BUCKETS + b);
+        }
+        map.put(stage.label, histogram);
+      }
+      return map;
+    }
+
+    @Override
+    public void reset() {
+      int i;
+
+      this.pixels.reset();
+      this.segments.reset();
+      this.bytes.reset();
+
+      for(i = 0; i < this.counts.length(); i++) {
+        this.counts.set(i, 0);
+        this.nanos.set(i, 0);
+      }
+      for(i = 0; i < this.histograms.length(); i++) {
+        this.histograms.set(i, 0);
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of {@link VectorEngine}, processing one vector of pixels (8 on AVX2, 16 on AVX-512)
+ * per iteration: the window is accumulated with lanewise multiply-adds, the magnitude is computed with a single
+ * precision square root and thresholding is a lanewise comparison of the squared responses.
+ *
+ * The single precision square root gives the exact result: squared magnitudes are first clamped to 256^2, below
+ * which the rounding error of the float square root is far smaller than the distance between the square root of
+ * an integer that is not a square and the nearest integer.
+ *
+ * Needs the incubating module: compile with {@code javac --add-modules jdk.incubator.vector VectorConvolution.java}
+ * and run with {@code java --add-modules jdk.incubator.vector Main}.
+ */
+final class VectorConvolution implements VectorEngine {
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+  public VectorConvolution() {
+    if(INTS.length() < 4 || INTS.length() != FLOATS.length()) {
+      throw new UnsupportedOperationException("No usable vector shape");
+    }
+  }
+
+  @Override
+  public int convolveRow(int[] pixels, int[] gradient, int row, int width, int size, int[] windowX, int[] windowY,
+                         Magnitude magnitude, int squaredThreshold) {
+    int span = width - size + 1;
+    int lanes = INTS.length();
+    int x;
+
+    if(size == 3) {
+      int fx00 = windowX[0], fx01 = windowX[1], fx02 = windowX[2];
+      int fx10 = windowX[3], fx11 = windowX[4], fx12 = windowX[5];
+      int fx20 = windowX[6], fx21 = windowX[7], fx22 = windowX[8];
+      int fy00 = windowY[0], fy01 = windowY[1], fy02 = windowY[2];
+      int fy10 = windowY[3], fy11 = windowY[4], fy12 = windowY[5];
+      int fy20 = windowY[6], fy21 = windowY[7], fy22 = windowY[8];
+
+      for(x = 0; x + lanes <= span; x += lanes) {
+        int p0 = row + x, p1 = p0 + width, p2 = p1 + width;
+        IntVector v00 = IntVector.fromArray(INTS, pixels, p0);
+        IntVector v01 = IntVector.fromArray(INTS, pixels, p0 + 1);
+        IntVector v02 = IntVector.fromArray(INTS, pixels, p0 + 2);
+        IntVector v10 = IntVector.fromArray(INTS, pixels, p1);
+        IntVector v11 = IntVector.fromArray(INTS, pixels, p1 + 1);
+        IntVector v12 = IntVector.fromArray(INTS, pixels, p1 + 2);
+        IntVector v20 = IntVector.fromArray(INTS, pixels, p2);
+        IntVector v21 = IntVector.fromArray(INTS, pixels, p2 + 1);
+        IntVector v22 = IntVector.fromArray(INTS, pixels, p2 + 2);
+
+        IntVector gx = v00.mul(fx00).add(v01.mul(fx01)).add(v02.mul(fx02))
+          .add(v10.mul(fx10)).add(v11.mul(fx11)).add(v12.mul(fx12))
+          .add(v20.mul(fx20)).add(v21.mul(fx21)).add(v22.mul(fx22));
+        IntVector gy = v00.mul(fy00).add(v01.mul(fy01)).add(v02.mul(fy02))
+          .add(v10.mul(fy10)).add(v11.mul(fy11)).add(v12.mul(fy12))
+          .add(v20.mul(fy20)).add(v21.mul(fy21)).add(v22.mul(fy22));
+
+        magnitude(gx, gy, magnitude, squaredThreshold).intoArray(gradient, p0);
+      }
+    }
+    else if(size == 2) {
+      int fx00 = windowX[0], fx01 = windowX[1], fx10 = windowX[2], fx11 = windowX[3];
+      int fy00 = windowY[0], fy01 = windowY[1], fy10 = windowY[2], fy11 = windowY[3];
+
+      for(x = 0; x + lanes <= span; x += lanes) {
+        int p0 = row + x, p1 = p0 + width;
+        IntVector v00 = IntVector.fromArray(INTS, pixels, p0);
+        IntVector v01 = IntVector.fromArray(INTS, pixels, p0 + 1);
+        IntVector v10 = IntVector.fromArray(INTS, pixels, p1);
+        IntVector v11 = IntVector.fromArray(INTS, pixels, p1 + 1);
+
+        IntVector gx = v00.mul(fx00).add(v01.mul(fx01)).add(v10.mul(fx10)).add(v11.mul(fx11));
+        IntVector gy = v00.mul(fy00).add(v01.mul(fy01)).add(v10.mul(fy10)).add(v11.mul(fy11));
+
+        magnitude(gx, gy, magnitude, squaredThreshold).intoArray(gradient, p0);
+      }
+    }
+    else {
+      return 0;
+    }
+
+    return x;
+  }
+
+  /**
+   * Lanewise counterpart of {@link Convolution#magnitude(int, int, int)}.
+   */
+  private static IntVector magnitude(IntVector gx, IntVector gy, Magnitude magnitude, int squaredThreshold) {
+    if(squaredThreshold >= 0) {
+      IntVector squared = gx.mul(gx).add(gy.mul(gy));
+      return IntVector.zero(INTS).blend(255, squared.compare(VectorOperators.GE, squaredThreshold));
+    }
+
+    switch(magnitude) {
+      case L1:
+        return gx.abs().add(gy.abs()).min(255);
+      case LINF:
+        return gx.abs().max(gy.abs()).min(255);
+      default:
+        IntVector squared = gx.mul(gx).add(gy.mul(gy)).min(256 * 256);
+        FloatVector root = ((FloatVector) squared.convert(VectorOperators.I2F, 0)).lanewise(VectorOperators.SQRT);
+        return ((IntVector) root.convert(VectorOperators.F2I, 0)).min(255);
+    }
+  }
+}
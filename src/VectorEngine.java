@@ -0,0 +1,63 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+/**
+ * Filter windows computed several pixels at a time with SIMD instructions. The implementation,
+ * {@code VectorConvolution}, is built on the incubating JDK Vector API: it is only compiled and loaded when the
+ * {@code jdk.incubator.vector} module is available, the filters falling back to their scalar loops otherwise.
+ * Both give exactly the same result.
+ */
+interface VectorEngine {
+  /**
+   * Compute the filter windows of one row, as many lanes at a time as the hardware allows, the remaining windows
+   * being left to the scalar loop.
+   * @param pixels Gray levels in row-major order.
+   * @param gradient Output buffer in row-major order.
+   * @param row Index of the first pixel of the row.
+   * @param width Image width.
+   * @param size Window size, 2 or 3.
+   * @param windowX X-axis weights, indexed by row in the window times size plus column in the window.
+   * @param windowY Y-axis weights, indexed the same way.
+   * @param magnitude Magnitude mode.
+   * @param squaredThreshold Squared threshold to output black and white pixels, or -1 to output the magnitude.
+   * @return Column of the first window not computed.
+   * @see Convolution#convolve(int[], int[], int, int, int, int, int)
+   */
+  int convolveRow(int[] pixels, int[] gradient, int row, int width, int size, int[] windowX, int[] windowY,
+                  Magnitude magnitude, int squaredThreshold);
+
+  /**
+   * Load the vectorized engine unless disabled by the {@code jed.vector} system property set to false.
+   * @return The engine or null if it is disabled, was not compiled or the Vector API is not available.
+   */
+  static VectorEngine load() {
+    if(!Boolean.parseBoolean(System.getProperty("jed.vector", "true"))) {
+      return null;
+    }
+
+    try {
+      return (VectorEngine) Class.forName("VectorConvolution").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
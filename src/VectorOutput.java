@@ -0,0 +1,75 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Destination of vectorization results, written as they are produced: polylines made of a move to their first
+ * point followed by lines to the next ones. The document is complete once the output is closed.
+ */
+interface VectorOutput extends Closeable {
+  /**
+   * Write the document header.
+   * @param width Image width.
+   * @param height Image height.
+   * @throws IOException On write error.
+   */
+  void begin(int width, int height) throws IOException;
+
+  /**
+   * Start a new polyline.
+   * @throws IOException On write error.
+   */
+  void moveTo(int x, int y) throws IOException;
+
+  /**
+   * Continue the current polyline with a line to a point.
+   * @throws IOException On write error.
+   */
+  void lineTo(int x, int y) throws IOException;
+
+  /**
+   * Write a line between two points.
+   * @throws IOException On write error.
+   */
+  default void line(int x1, int y1, int x2, int y2) throws IOException {
+    this.moveTo(x1, y1);
+    this.lineTo(x2, y2);
+  }
+
+  /**
+   * Create an output file in the format its name calls for: binary segments ({@value SegmentFile#EXTENSION}),
+   * gzip compressed SVG (.svgz) or SVG.
+   * @param file Output file.
+   * @return Output of the file.
+   * @throws IOException If the file could not be created.
+   */
+  static VectorOutput open(File file) throws IOException {
+    if(file.getName().toLowerCase(Locale.ROOT).endsWith(SegmentFile.EXTENSION)) {
+      return new SegmentFile.Output(file);
+    }
+
+    return SvgWriter.open(file);
+  }
+}
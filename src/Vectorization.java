@@ -22,11 +22,14 @@
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Our vectorization strategy is very straightforward. Starting with a thresholded image we iterate over, we try
@@ -35,103 +38,370 @@ import java.util.List;
  */
 class Vectorization extends Kernel {
   /**
-   * List of detected segments.
+   * Detected segments.
    */
-  private List<Segment> segments;
+  private final SegmentStore segments;
 
   /**
    * Vectorized image.
    */
   private BufferedImage output;
 
+  /**
+   * Thresholded image as a bitmap, or null to read it from the image.
+   */
+  private final Bitmap bitmap;
+
+  /**
+   * Whether the image is vectorized by strips of rows, see {@link #setStriped(boolean)}.
+   */
+  private boolean striped;
+
+  /**
+   * Number of threads vectorizing the strips.
+   */
+  private int parallelism = Workers.DEFAULT_PARALLELISM;
+
+  /**
+   * Height of the strips. It does not depend on the number of threads, so neither does the result, and it is a
+   * multiple of the bitmap word size, so strips never share words of the bitmap they clear pixels of.
+   */
+  static final int STRIP_ROWS = 256;
+
+  /**
+   * Tolerance of the polyline simplification, negative to write the segments as they are.
+   * @see Polylines
+   */
+  private double simplification = -1;
+
+  /**
+   * Vectorization engines.
+   */
+  enum Engine {
+    /**
+     * Straight runs in four directions from every white pixel, see {@link Vectorization}.
+     */
+    SCAN,
+
+    /**
+     * Chains of pixels traced along the edges, see {@link ContourTracer}.
+     */
+    CONTOURS
+  }
+
+  private Engine engine = Engine.SCAN;
+
+  /**
+   * Edges traced by the {@link Engine#CONTOURS} engine, null with the scan.
+   */
+  private Polylines contours;
+
+  /**
+   * Spatial index of the segments, built on first use.
+   */
+  private SegmentIndex index;
+
   public Vectorization(BufferedImage thresholded) {
-    super(thresholded);
-    this.segments = new ArrayList<>();
-    this.output = new BufferedImage(this.getImage().getWidth(), this.getImage().getHeight(), BufferedImage.TYPE_INT_ARGB);
+    this(thresholded, null);
   }
 
+  /**
+   * Vectorize a bitmap straight away, without the thresholded image (see e. g. {@link Convolution#getBitmap()}).
+   * @param thresholded Thresholded image as a bitmap.
+   */
+  public Vectorization(Bitmap thresholded) {
+    this(null, thresholded);
+  }
+
+  private Vectorization(BufferedImage image, Bitmap bitmap) {
+    super(image);
+    this.bitmap = bitmap;
+    this.segments = new SegmentStore();
+
+    int width = bitmap != null ? bitmap.getWidth() : image.getWidth();
+    int height = bitmap != null ? bitmap.getHeight() : image.getHeight();
+
+    this.output = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  /**
+   * @return Read-only view of the detected segments, for compatibility. {@link #getSegmentStore()} reads them without
+   * creating any object.
+   */
   public List<Segment> getSegments() {
-    return segments;
+    return this.segments.asList();
+  }
+
+  public SegmentStore getSegmentStore() {
+    return this.segments;
+  }
+
+  /**
+   * @return Spatial index of the detected segments, built on first call after the vectorization.
+   */
+  public SegmentIndex getIndex() {
+    if(this.index == null || this.index.size() != this.segments.size()) {
+      this.index = SegmentIndex.of(this.segments);
+    }
+    return this.index;
   }
 
   public BufferedImage getOutput() {
     return output;
   }
 
+  public boolean isStriped() {
+    return this.striped;
+  }
+
+  /**
+   * Choose whether the image is vectorized in a single scan or by strips of {@value #STRIP_ROWS} rows vectorized in
+   * parallel. Segments crossing the boundary between two strips are split by the strips, then stitched back
+   * together, so the result is the same whatever the number of threads. It differs slightly from the one of the
+   * single scan though, as the pixels of the first row of a strip may start segments of their own.
+   * @param striped True to vectorize by strips.
+   */
+  public void setStriped(boolean striped) {
+    this.striped = striped;
+  }
+
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  public double getSimplification() {
+    return this.simplification;
+  }
+
+  /**
+   * Choose whether the segments are written as they are or chained into simplified polylines, which gives far
+   * smaller documents.
+   * @param tolerance Greatest distance in pixels between the simplified polylines and the segments (0 only merges
+   * collinear segments), or a negative value to write the segments as they are.
+   * @see Polylines
+   */
+  public void setSimplification(double tolerance) {
+    if(Double.isNaN(tolerance)) {
+      throw new IllegalArgumentException("Tolerance must be a number");
+    }
+    this.simplification = tolerance;
+  }
+
+  public Engine getEngine() {
+    return this.engine;
+  }
+
+  /**
+   * Choose the vectorization engine. The {@link Engine#CONTOURS} engine traces the image in a single scan, so the
+   * image is not vectorized by strips then, and its result is always written as polylines.
+   * @param engine Vectorization engine.
+   */
+  public void setEngine(Engine engine) {
+    if(engine == null) {
+      throw new IllegalArgumentException("Engine must not be null");
+    }
+    this.engine = engine;
+  }
+
+  /**
+   * @return The segments chained into polylines, or the traced edges, simplified with the simplification tolerance
+   * if it is set.
+   */
+  public Polylines getPolylines() {
+    if(this.contours != null) {
+      return this.simplification > 0 ? this.contours.simplified(this.simplification) : this.contours;
+    }
+    return Polylines.of(this.segments, Math.max(0, this.simplification));
+  }
+
+  /**
+   * Set the number of threads vectorizing the strips. The result does not depend on it.
+   * @param parallelism Number of threads, 1 to vectorize on the calling thread.
+   */
+  public void setParallelism(int parallelism) {
+    if(parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
   /**
    * Implementation of our vectorization algorithm.
    * @see Vectorization
    */
   @Override
   public void processImage() {
-    int width = this.getImage().getWidth();
-    int height = this.getImage().getHeight();
-    int i, j;
-    int[][] pixels = new int[width][height];
-    int white = Color.WHITE.getRGB();
-    int black = Color.BLACK.getRGB();
-
-    for(i = 0; i < width; i++) {
-      for(j = 0; j < height; j++) {
-        pixels[i][j] = this.getImage().getRGB(i, j);
+    this.processImage(1);
+  }
+
+  /**
+   * Same as {@link #processImage()} but lets choose the first row searched for segment starting points, which is
+   * useful when the image is a strip of a larger one.
+   * @param firstRow First row whose pixels may start a segment.
+   */
+  public void processImage(int firstRow) {
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.VECTORIZATION);
+
+    this.findSegments(firstRow);
+
+    span.size(this.output.getWidth(), this.output.getHeight()).segments(this.segments.size()).end();
+  }
+
+  /**
+   * Scan or trace the image, depending on the engine.
+   */
+  private void findSegments(int firstRow) {
+    // Pixels are cleared as they are added to segments, so the bitmap of the vectorization is left untouched.
+    Bitmap pixels = this.bitmap != null ? this.bitmap.copy() : Bitmap.of(this.getImage());
+    int height = pixels.getHeight();
+
+    this.index = null;
+
+    if(this.engine == Engine.CONTOURS) {
+      this.trace(pixels, firstRow);
+      return;
+    }
+
+    if(!this.striped || height <= STRIP_ROWS) {
+      scan(pixels, firstRow, height, this.segments);
+      return;
+    }
+
+    int count = (height + STRIP_ROWS - 1) / STRIP_ROWS;
+    List<SegmentStore> strips = new ArrayList<>(count);
+    List<Strip> tasks = new ArrayList<>(count);
+    int s;
+
+    for(s = 0; s < count; s++) {
+      SegmentStore strip = new SegmentStore();
+      strips.add(strip);
+      tasks.add(new Strip(pixels, s * STRIP_ROWS, Math.min(height, (s + 1) * STRIP_ROWS), firstRow, strip));
+    }
+
+    // Strips are vectorized by waves, the work stopping between two of them once the calling thread is interrupted.
+    int wave = this.parallelism == 1 ? 1 : 2 * this.parallelism;
+
+    for(s = 0; s < count; s += wave) {
+      List<Strip> next = tasks.subList(s, Math.min(count, s + wave));
+
+      Workers.checkInterrupted();
+
+      if(this.parallelism == 1) {
+        next.get(0).compute();
+      }
+      else {
+        Workers.invoke(new Strips(next), this.parallelism);
+      }
+    }
+
+    stitch(strips, this.segments);
+  }
+
+  /**
+   * Trace the edges, their polylines being also added to the segments one line at a time.
+   */
+  private void trace(Bitmap pixels, int firstRow) {
+    int i, p;
+
+    this.contours = ContourTracer.trace(pixels, firstRow);
+
+    for(i = 0; i < this.contours.size(); i++) {
+      for(p = this.contours.getStart(i) + 1; p < this.contours.getEnd(i); p++) {
+        this.segments.add(this.contours.getX(p - 1), this.contours.getY(p - 1),
+          this.contours.getX(p), this.contours.getY(p));
       }
     }
+  }
+
+  /**
+   * Detect the segments of a range of rows. Segments stop at the last row of the range.
+   * @param pixels Bitmap whose pixels are cleared as they are added to segments.
+   * @param firstRow First row whose pixels may start a segment.
+   * @param height Row following the last row of the range.
+   * @param segments Store the segments are added to.
+   */
+  private static void scan(Bitmap pixels, int firstRow, int height, SegmentStore segments) {
+    int width = pixels.getWidth();
+    int words = (height + 63) >>> 6;
+    int i, j, w;
+
+    if(firstRow >= height) {
+      return;
+    }
 
     for(i = 1;i < width;i++) {
-      for(j = 1;j < height;j++) {
-        if (pixels[i][j] == white) {
+      for(w = firstRow >>> 6;w < words;w++) {
+        long word = pixels.getWord(i, w);
+
+        if(w == firstRow >>> 6) {
+          word &= -1L << firstRow;
+        }
+        if(w == words - 1 && (height & 63) != 0) {
+          word &= (1L << height) - 1;
+        }
+
+        // Empty words are skipped, the white pixels of the others are visited from top to bottom.
+        while (word != 0) {
+          j = (w << 6) + Long.numberOfTrailingZeros(word);
+
           int x1 = i, y1 = j;
           int x2 = x1, y2 = y1;
 
           // Right direction of segment detection
-          while ((x2 + 1) < width && pixels[x2 + 1][y2] == white) {
-            pixels[x2 + 1][y2] = black;
+          while ((x2 + 1) < width && pixels.get(x2 + 1, y2)) {
+            pixels.clear(x2 + 1, y2);
             x2++;
           }
 
           if (x2 != x1) {
-            this.segments.add(new Segment(x1, x2, y1, y2));
+            segments.add(x1, y1, x2, y2);
           }
 
           x2 = x1;
           y2 = y1;
 
           // Right diagonal direction of segment detection
-          while ((x2 + 1) < width && (y2 + 1) < height && pixels[x2 + 1][y2 + 1] == white) {
-            pixels[x2 + 1][y2 + 1] = black;
+          while ((x2 + 1) < width && (y2 + 1) < height && pixels.get(x2 + 1, y2 + 1)) {
+            pixels.clear(x2 + 1, y2 + 1);
             x2++;
             y2++;
           }
 
           if (x2 != x1 && y2 != y1) {
-            this.segments.add(new Segment(x1, x2, y1, y2));
+            segments.add(x1, y1, x2, y2);
           }
 
           x2 = x1;
           y2 = y1;
 
           // Down direction of segment detection
-          while ((y2 + 1) < height && pixels[x2][y2 + 1] == white) {
-            pixels[x2][y2 + 1] = black;
+          while ((y2 + 1) < height && pixels.get(x2, y2 + 1)) {
+            pixels.clear(x2, y2 + 1);
             y2++;
           }
 
           if (y2 != y1) {
-            this.segments.add(new Segment(x1, x2, y1, y2));
+            segments.add(x1, y1, x2, y2);
           }
 
           x2 = x1;
           y2 = y1;
 
           // Left diagonal direction of segment detection
-          while ((x2 - 1) > 0 && (y2 + 1) < height && pixels[x2 - 1][y2 + 1] == white) {
-            pixels[x2 - 1][y2 + 1] = black;
+          while ((x2 - 1) > 0 && (y2 + 1) < height && pixels.get(x2 - 1, y2 + 1)) {
+            pixels.clear(x2 - 1, y2 + 1);
             x2--;
             y2++;
           }
 
           if (x2 != x1 && y2 != y1) {
-            this.segments.add(new Segment(x1, x2, y1, y2));
+            segments.add(x1, y1, x2, y2);
+          }
+
+          // The down direction may have cleared pixels of the word: read it again, past the current pixel.
+          word = pixels.getWord(i, w) & (-2L << j);
+          if(w == words - 1 && (height & 63) != 0) {
+            word &= (1L << height) - 1;
           }
         }
       }
@@ -139,39 +409,242 @@ class Vectorization extends Kernel {
   }
 
   /**
-   * Redraw the image based on detected segments.
+   * Strip of rows vectorized on its own.
+   */
+  @SuppressWarnings("serial")
+  private static class Strip extends RecursiveAction {
+    private final Bitmap pixels;
+    private final int fromRow, toRow, firstRow;
+    private final SegmentStore segments;
+
+    Strip(Bitmap pixels, int fromRow, int toRow, int firstRow, SegmentStore segments) {
+      this.pixels = pixels;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.firstRow = firstRow;
+      this.segments = segments;
+    }
+
+    @Override
+    protected void compute() {
+      scan(this.pixels, Math.max(this.fromRow, this.firstRow), this.toRow, this.segments);
+    }
+  }
+
+  /**
+   * All the strips of an image, vectorized in parallel.
+   */
+  @SuppressWarnings("serial")
+  private static class Strips extends RecursiveAction {
+    private final List<Strip> strips;
+
+    Strips(List<Strip> strips) {
+      this.strips = strips;
+    }
+
+    @Override
+    protected void compute() {
+      invokeAll(this.strips);
+    }
+  }
+
+  /**
+   * Join the segments crossing strip boundaries: a segment ending at the last row of a strip is extended by the
+   * segment of the next strip starting at the following pixel in the same direction, which is then dropped.
+   * Segments keep the order of the strip they start in, strips being taken from top to bottom.
+   * @param strips Segments of each strip.
+   * @param stitched Store the segments of the whole image are added to.
+   */
+  private static void stitch(List<SegmentStore> strips, SegmentStore stitched) {
+    // Segments ending at the last row of the previous strip, by the pixel and direction they would continue with.
+    Map<Long, int[]> open = new HashMap<>();
+    BitSet[] dropped = new BitSet[strips.size()];
+    int s, k;
+
+    for(s = 0; s < strips.size(); s++) {
+      SegmentStore strip = strips.get(s);
+      int top = s * STRIP_ROWS, bottom = top + STRIP_ROWS - 1;
+      Map<Long, int[]> next = new HashMap<>();
+
+      dropped[s] = new BitSet();
+
+      for(k = 0; k < strip.size(); k++) {
+        int y1 = strip.getY1(k), x2 = strip.getX2(k), y2 = strip.getY2(k);
+
+        if(y2 == y1) {
+          continue;
+        }
+
+        int dx = Integer.signum(x2 - strip.getX1(k));
+        int[] previous = y1 == top ? open.remove(continuation(strip.getX1(k), dx)) : null;
+
+        if(previous != null) {
+          SegmentStore start = strips.get(previous[0]);
+          start.set(previous[1], start.getX1(previous[1]), start.getY1(previous[1]), x2, y2);
+          dropped[s].set(k);
+        }
+        else {
+          previous = new int[] { s, k };
+        }
+
+        if(y2 == bottom) {
+          next.put(continuation(x2 + dx, dx), previous);
+        }
+      }
+
+      open = next;
+    }
+
+    for(s = 0; s < strips.size(); s++) {
+      SegmentStore.Cursor cursor = strips.get(s).cursor();
+
+      while(cursor.next()) {
+        if(!dropped[s].get(cursor.getIndex())) {
+          stitched.add(cursor.getX1(), cursor.getY1(), cursor.getX2(), cursor.getY2());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return Key of the pixel of the first row of a strip a segment continues with, and of its direction.
+   */
+  private static long continuation(int x, int dx) {
+    return ((long) x << 2) | (dx + 1);
+  }
+
+  /**
+   * Redraw the image based on detected segments, straight into the pixels of the output image.
+   * @see LineRaster
    */
   public void draw() {
-    Graphics2D drawing = this.output.createGraphics();
-    drawing.setColor(Color.BLACK);
+    LineRaster.draw(this.output, this.segments, null, new Rectangle(this.output.getWidth(), this.output.getHeight()),
+      this.parallelism);
+  }
+
+  /**
+   * Redraw the part of the image based on the detected segments found in a region, through the spatial index.
+   * @param clip Redrawn region.
+   * @see #getIndex()
+   */
+  public void draw(Rectangle clip) {
+    LineRaster.draw(this.output, this.segments, this.getIndex().query(clip), clip, this.parallelism);
+  }
 
-    for (Segment s : this.getSegments()) {
-      drawing.drawLine(s.getX1(), s.getY1(), s.getX2(), s.getY2());
+  /**
+   * Write the detected segments, each as a subpath of its own.
+   * @param out Output document.
+   * @param offsetY Vertical offset added to all the coordinates (e. g. position of the strip the image comes from).
+   * @throws IOException On write error.
+   */
+  public void writeSegments(VectorOutput out, int offsetY) throws IOException {
+    write(out, this.segments, offsetY);
+  }
+
+  private static void write(VectorOutput out, SegmentStore segments, int offsetY) throws IOException {
+    SegmentStore.Cursor s = segments.cursor();
+
+    while(s.next()) {
+      out.line(s.getX1(), s.getY1() + offsetY, s.getX2(), s.getY2() + offsetY);
     }
   }
 
   /**
-   * Save vectorization results to a SVG file.
-   * @param filename Output file name.
+   * Write the detected segments as polylines, each as a subpath of its own.
+   * @param out Output document.
+   * @param offsetY Vertical offset added to all the coordinates.
+   * @throws IOException On write error.
+   * @see #getPolylines()
    */
-  public void export(String filename) {
-    FileWriter out;
-    BufferedWriter buffer;
+  public void writePolylines(VectorOutput out, int offsetY) throws IOException {
+    write(out, this.getPolylines(), offsetY);
+  }
 
-    try {
-      out = new FileWriter(filename);
-      buffer = new BufferedWriter(out);
+  private static void write(VectorOutput out, Polylines polylines, int offsetY) throws IOException {
+    int i, p;
 
-      buffer.write("<svg xmlns=\"http://www.w3.org/2000/svg\">");
+    for(i = 0; i < polylines.size(); i++) {
+      p = polylines.getStart(i);
+      out.moveTo(polylines.getX(p), polylines.getY(p) + offsetY);
 
-      for(Segment s : this.getSegments()) {
-        buffer.write("<line x1=\"" + s.getX1() + "\" y1=\"" + s.getY1() + "\" x2=\"" + s.getX2() + "\" y2=\"" + s.getY2() + "\" stroke=\"black\" stroke-width=\"1\" />");
+      for(p++; p < polylines.getEnd(i); p++) {
+        out.lineTo(polylines.getX(p), polylines.getY(p) + offsetY);
       }
+    }
+  }
 
-      buffer.close();
-      out.close();
-    } catch (IOException e) {
-      System.out.println("I/O Error while saving output document!\n\tError message: " + e.toString());
+  /**
+   * @return Whether the result is written as polylines rather than segments.
+   */
+  private boolean isPolylines() {
+    return this.simplification >= 0 || this.contours != null;
+  }
+
+  /**
+   * Write the vectorization result: traced edges or simplified polylines if a simplification tolerance is set,
+   * segments otherwise.
+   * @param out Output document.
+   * @param offsetY Vertical offset added to all the coordinates.
+   * @throws IOException On write error.
+   */
+  public void writeElements(VectorOutput out, int offsetY) throws IOException {
+    if(this.isPolylines()) {
+      this.writePolylines(out, offsetY);
+    }
+    else {
+      this.writeSegments(out, offsetY);
     }
   }
+
+  /**
+   * Save vectorization results to a SVG file, compressed if its name ends with .svgz, or to a binary segment file
+   * if it ends with {@value SegmentFile#EXTENSION}.
+   * @param filename Output file name.
+   * @throws IOException If the file could not be written.
+   * @see VectorOutput#open(File)
+   */
+  public void export(String filename) throws IOException {
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.WRITE);
+    File file = new File(filename);
+
+    try (VectorOutput out = VectorOutput.open(file)) {
+      out.begin(this.output.getWidth(), this.output.getHeight());
+      this.writeElements(out, 0);
+    }
+
+    span.size(this.output.getWidth(), this.output.getHeight()).segments(this.segments.size()).bytes(file.length()).end();
+  }
+
+  /**
+   * Save the part of the vectorization results found in a window, as a document of the size of the window. The
+   * segments are taken from the spatial index, those crossing the border of the window being kept whole.
+   * @param filename Output file name.
+   * @param window Exported region of the image.
+   * @throws IOException If the file could not be written.
+   * @see #export(String)
+   * @see #getIndex()
+   */
+  public void export(String filename, Rectangle window) throws IOException {
+    Telemetry.Span span = Telemetry.start(Telemetry.Stage.WRITE);
+    SegmentStore selected = new SegmentStore();
+    File file = new File(filename);
+
+    for(int i : this.getIndex().query(window)) {
+      selected.add(this.segments.getX1(i) - window.x, this.segments.getY1(i) - window.y,
+        this.segments.getX2(i) - window.x, this.segments.getY2(i) - window.y);
+    }
+
+    try (VectorOutput out = VectorOutput.open(file)) {
+      out.begin(window.width, window.height);
+
+      if(this.isPolylines()) {
+        write(out, Polylines.of(selected, Math.max(0, this.simplification)), 0);
+      }
+      else {
+        write(out, selected, 0);
+      }
+    }
+
+    span.size(window.width, window.height).segments(selected.size()).bytes(file.length()).end();
+  }
 }
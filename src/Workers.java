@@ -0,0 +1,76 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the fork/join tasks of the parallel stages. At the default parallelism the tasks run in the common pool, the
+ * calling thread taking part in the work, so nothing is created per call. Other parallelisms, when explicitly asked
+ * for, get a pool of their own, created on first use and kept for the following calls: the blocks and waves of a large
+ * image are many calls, which would otherwise start and stop the threads every time. Idle pool threads end by
+ * themselves after a while.
+ */
+final class Workers {
+  /**
+   * Default number of threads of the parallel stages: the workers of the common pool and the calling thread.
+   */
+  static final int DEFAULT_PARALLELISM =
+    Math.min(Runtime.getRuntime().availableProcessors(), ForkJoinPool.getCommonPoolParallelism() + 1);
+
+  /**
+   * Pools of the parallelisms other than the default one, by parallelism.
+   */
+  private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+  private Workers() {
+  }
+
+  /**
+   * Run a task and wait for its completion.
+   * @param task Task to run, splitting its work in subtasks.
+   * @param parallelism Number of threads, greater than 1 (callers run the work themselves otherwise).
+   */
+  static void invoke(ForkJoinTask<?> task, int parallelism) {
+    if(parallelism == DEFAULT_PARALLELISM) {
+      // Outside of a pool, the subtasks forked by the task are pushed to the common pool.
+      task.invoke();
+      return;
+    }
+
+    POOLS.computeIfAbsent(parallelism, ForkJoinPool::new).invoke(task);
+  }
+
+  /**
+   * Stop the work of a thread interrupted meanwhile, e. g. a preview of the user interface superseded by a newer one.
+   * Waiting for a task hides the interruption until the task is done, so the parallel stages invoke their tasks by
+   * waves and check between them.
+   * @throws CancellationException If the current thread is interrupted, its interrupted status being left set.
+   */
+  static void checkInterrupted() {
+    if(Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("Interrupted");
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * The fused pass and the thresholded output of {@link Convolution} compared with the separate passes and with the
+ * thresholded magnitude of the naive convolution.
+ */
+class ConvolutionTest {
+  private static final String[] FILTERS = { "roberts", "sobel", "prewitt", "scharr", "laplacian" };
+
+  private static final int[][] SOBEL_X = { { -1, 0, 1 }, { -2, 0, 2 }, { -1, 0, 1 } };
+  private static final int[][] SOBEL_Y = { { -1, -2, -1 }, { 0, 0, 0 }, { 1, 2, 1 } };
+  private static final int[][] ROBERTS_X = { { 1, 0 }, { 0, -1 } };
+  private static final int[][] ROBERTS_Y = { { 0, 1 }, { -1, 0 } };
+  private static final int[][] SCHARR_X = { { -3, 0, 3 }, { -10, 0, 10 }, { -3, 0, 3 } };
+  private static final int[][] SCHARR_Y = { { -3, -10, -3 }, { 0, 0, 0 }, { 3, 10, 3 } };
+  private static final int[][] LAPLACIAN = { { 0, 1, 0 }, { 1, -4, 1 }, { 0, 1, 0 } };
+
+  private static BufferedImage image(int width, int height, int type, Random random) {
+    BufferedImage image = new BufferedImage(width, height, type);
+    int[] red = Reference.grays(width, height, random);
+    int[] green = Reference.grays(width, height, random);
+    int[] blue = Reference.grays(width, height, random);
+    int x, y;
+
+    for(y = 0; y < height; y++) {
+      for(x = 0; x < width; x++) {
+        int i = y * width + x;
+        image.setRGB(x, y, 0xFF000000 | red[i] << 16 | green[i] << 8 | blue[i]);
+      }
+    }
+    return image;
+  }
+
+  private static BufferedImage copy(BufferedImage image) {
+    BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+    image.copyData(copy.getRaster());
+    return copy;
+  }
+
+  private static int[] rgb(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  private static void assertSameBitmap(Bitmap expected, Bitmap actual, String message) {
+    int x, y;
+
+    assertNotNull(actual, message);
+    for(y = 0; y < expected.getHeight(); y++) {
+      for(x = 0; x < expected.getWidth(); x++) {
+        assertEquals(expected.get(x, y), actual.get(x, y), message + ", pixel " + x + ", " + y);
+      }
+    }
+  }
+
+  private static int[][] matrix(int size, int bound, Random random) {
+    int[][] matrix = new int[size][size];
+    int i, j;
+
+    for(i = 0; i < size; i++) {
+      for(j = 0; j < size; j++) {
+        matrix[i][j] = random.nextInt(2 * bound + 1) - bound;
+      }
+    }
+    return matrix;
+  }
+
+  private static Convolution run(String name, BufferedImage source, int threshold, int parallelism, boolean fused,
+                                 boolean bitmapOnly) {
+    Convolution filter = Convolution.create(name, copy(source), threshold);
+
+    filter.setParallelism(parallelism);
+    filter.setFused(fused);
+    filter.setBitmapOnly(bitmapOnly);
+    filter.applyFilter();
+    filter.applyThreshold();
+    return filter;
+  }
+
+  @Test
+  void fusedMatchesSeparatePasses() {
+    int[] types = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+      BufferedImage.TYPE_BYTE_GRAY };
+    // Sizes smaller than the matrices, and around and over the rows of a block of the fused pass.
+    int[][] sizes = { { 1, 1 }, { 2, 2 }, { 3, 200 }, { 50, 1 }, { 61, 63 }, { 61, 64 }, { 61, 65 }, { 37, 300 } };
+    int[] thresholds = { -1, 0, 100, 255 };
+    int[] parallelisms = { 1, 3 };
+    Random random = new Random(1);
+
+    for(int type : types) {
+      for(int[] size : sizes) {
+        BufferedImage source = image(size[0], size[1], type, random);
+
+        for(String name : FILTERS) {
+          for(int threshold : thresholds) {
+            for(int parallelism : parallelisms) {
+              String message = name + ", type " + type + ", " + size[0] + "x" + size[1] + ", threshold " + threshold +
+                ", parallelism " + parallelism;
+              Convolution separate = run(name, source, threshold, parallelism, false, false);
+              Convolution fused = run(name, source, threshold, parallelism, true, false);
+
+              assertArrayEquals(rgb(separate.getImage()), rgb(fused.getImage()), message);
+              if(threshold >= 0) {
+                assertSameBitmap(separate.getBitmap(), fused.getBitmap(), message);
+                Convolution bitmapOnly = run(name, source, threshold, parallelism, true, true);
+
+                assertSameBitmap(separate.getBitmap(), bitmapOnly.getBitmap(), message + ", bitmap only");
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void thresholdedMatchesThresholdedMagnitude() {
+    int[][][] matrices = { ROBERTS_X, ROBERTS_Y, SOBEL_X, SOBEL_Y, LAPLACIAN, new int[3][3] };
+    int[] thresholds = { 0, 1, 99, 100, 254, 255 };
+    int[][] sizes = { { 1, 1 }, { 2, 3 }, { 3, 2 }, { 47, 39 } };
+    Random random = new Random(2);
+    int m;
+
+    for(m = 0; m < matrices.length; m += 2) {
+      for(int[] size : sizes) {
+        int width = size[0], height = size[1];
+        int[] pixels = Reference.grays(width, height, random);
+
+        for(Magnitude magnitude : Magnitude.values()) {
+          int[] reference = Reference.convolve(matrices[m], matrices[m + 1], pixels, width, height, magnitude);
+
+          for(int threshold : thresholds) {
+            CustomFilter filter = new CustomFilter(null, threshold, matrices[m], matrices[m + 1]);
+            int[] gradient = new int[pixels.length];
+            String message = matrices[m].length + "x" + matrices[m].length + " matrices, " + width + "x" + height +
+              ", " + magnitude + ", threshold " + threshold;
+
+            filter.setMagnitude(magnitude);
+            filter.setParallelism(1);
+            filter.setFilterMatrices();
+            filter.convolveThresholded(pixels, gradient, width, height);
+
+            assertSameBitmap(Bitmap.threshold(reference, width, height, threshold),
+              Bitmap.threshold(gradient, width, height, threshold), message);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void windowsMatchReference() {
+    Random random = new Random(3);
+    List<int[][]> matrices = new ArrayList<>(Arrays.asList(ROBERTS_X, ROBERTS_Y, SCHARR_X, SCHARR_Y, LAPLACIAN,
+      new int[3][3]));
+    int size, m;
+
+    // Random matrices of every size, with small weights and with weights large enough to saturate 16 bits.
+    for(size = 2; size <= 7; size++) {
+      for(int bound : new int[] { 5, 3000 }) {
+        matrices.add(matrix(size, bound, random));
+        matrices.add(matrix(size, bound, random));
+      }
+    }
+
+    for(m = 0; m < matrices.size(); m += 2) {
+      int[][] filterX = matrices.get(m), filterY = matrices.get(m + 1);
+      int matrixSize = filterX.length;
+      int[] lengths = { 1, matrixSize - 1, matrixSize, matrixSize + 1, 29 };
+
+      for(int width : lengths) {
+        for(int height : lengths) {
+          if(width == 0 || height == 0) {
+            continue;
+          }
+
+          int[] pixels = Reference.grays(width, height, random);
+
+          for(Magnitude magnitude : Magnitude.values()) {
+            int[] expected = Reference.convolve(filterX, filterY, pixels, width, height, magnitude);
+
+            for(int parallelism : new int[] { 1, 3 }) {
+              CustomFilter filter = new CustomFilter(null, -1, filterX, filterY);
+              int[] gradient = new int[pixels.length];
+
+              filter.setMagnitude(magnitude);
+              filter.setParallelism(parallelism);
+              filter.setFilterMatrices();
+              filter.convolveAll(pixels, gradient, width, height, -1);
+
+              assertArrayEquals(expected, gradient, matrixSize + "x" + matrixSize + " matrices " + m / 2 + ", " +
+                width + "x" + height + ", " + magnitude + ", parallelism " + parallelism);
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Lines drawn by {@link LineRaster} compared pixel for pixel with the ones drawn by {@link Graphics2D#drawLine(int,
+ * int, int, int)}, for random lines and clips, on the calling thread and in parallel bands.
+ */
+class LineRasterTest {
+  private static final int WIDTH = 320, HEIGHT = 240;
+
+  /**
+   * Random lines in every direction, some of them reaching out of the image.
+   */
+  private static SegmentStore randomSegments(int count, int range, Random random) {
+    SegmentStore segments = new SegmentStore();
+    int i;
+
+    for(i = 0; i < count; i++) {
+      int x1 = random.nextInt(WIDTH + 80) - 40, y1 = random.nextInt(HEIGHT + 80) - 40;
+
+      segments.add(x1, y1, x1 + random.nextInt(2 * range + 1) - range, y1 + random.nextInt(2 * range + 1) - range);
+    }
+
+    return segments;
+  }
+
+  private static Rectangle randomClip(Random random) {
+    int x = random.nextInt(WIDTH + 40) - 20, y = random.nextInt(HEIGHT + 40) - 20;
+
+    return new Rectangle(x, y, random.nextInt(WIDTH + 20), random.nextInt(HEIGHT + 20));
+  }
+
+  private static BufferedImage white(int type) {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+    Graphics2D drawing = image.createGraphics();
+
+    drawing.setColor(Color.WHITE);
+    drawing.fillRect(0, 0, WIDTH, HEIGHT);
+    drawing.dispose();
+    return image;
+  }
+
+  private static BufferedImage java2D(int type, SegmentStore segments, int[] indexes, Rectangle clip) {
+    BufferedImage image = white(type);
+    Graphics2D drawing = image.createGraphics();
+    int count = indexes != null ? indexes.length : segments.size();
+    int i;
+
+    drawing.setColor(Color.BLACK);
+    drawing.setClip(clip);
+    for(i = 0; i < count; i++) {
+      int s = indexes != null ? indexes[i] : i;
+      drawing.drawLine(segments.getX1(s), segments.getY1(s), segments.getX2(s), segments.getY2(s));
+    }
+    drawing.dispose();
+    return image;
+  }
+
+  private static void assertSameImage(BufferedImage expected, BufferedImage actual, String message) {
+    int x, y;
+
+    for(y = 0; y < HEIGHT; y++) {
+      for(x = 0; x < WIDTH; x++) {
+        if(expected.getRGB(x, y) != actual.getRGB(x, y)) {
+          assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), message + ", pixel " + x + ", " + y);
+        }
+      }
+    }
+  }
+
+  private static void check(int type, SegmentStore segments, int[] indexes, Rectangle clip, int parallelism) {
+    BufferedImage actual = white(type);
+
+    LineRaster.draw(actual, segments, indexes, clip, parallelism);
+    assertSameImage(java2D(type, segments, indexes, clip), actual,
+      "type " + type + ", " + segments.size() + " lines, clip " + clip + ", parallelism " + parallelism);
+  }
+
+  @Test
+  void matchesJava2D() {
+    int[] types = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR };
+    Random random = new Random(1);
+    int i;
+
+    for(int type : types) {
+      for(i = 0; i < 50; i++) {
+        SegmentStore segments = randomSegments(1 + random.nextInt(200), 1 << random.nextInt(10), random);
+        Rectangle clip = i % 5 == 0 ? new Rectangle(WIDTH, HEIGHT) : randomClip(random);
+
+        check(type, segments, null, clip, 1);
+      }
+    }
+  }
+
+  @Test
+  void matchesJava2DForSelectedLines() {
+    Random random = new Random(2);
+    SegmentStore segments = randomSegments(500, 64, random);
+    int[] indexes = new int[100];
+    int i;
+
+    for(i = 0; i < indexes.length; i++) {
+      indexes[i] = random.nextInt(segments.size());
+    }
+
+    check(BufferedImage.TYPE_INT_RGB, segments, indexes, new Rectangle(WIDTH, HEIGHT), 1);
+    check(BufferedImage.TYPE_INT_RGB, segments, indexes, randomClip(random), 1);
+  }
+
+  @Test
+  void matchesJava2DInParallel() {
+    Random random = new Random(3);
+    // Enough lines for the drawing to be split into bands, some of them crossing many bands.
+    SegmentStore segments = randomSegments(1 << 15, 12, random);
+    SegmentStore crossing = randomSegments(200, 1000, random);
+    int parallelism, i;
+
+    for(i = 0; i < crossing.size(); i++) {
+      segments.add(crossing.getX1(i), crossing.getY1(i), crossing.getX2(i), crossing.getY2(i));
+    }
+
+    for(parallelism = 1; parallelism <= 8; parallelism++) {
+      check(BufferedImage.TYPE_INT_ARGB, segments, null, new Rectangle(WIDTH, HEIGHT), parallelism);
+      check(BufferedImage.TYPE_INT_RGB, segments, null, randomClip(random), parallelism);
+    }
+    check(BufferedImage.TYPE_INT_RGB, segments, null, new Rectangle(WIDTH, HEIGHT), Workers.DEFAULT_PARALLELISM);
+  }
+}
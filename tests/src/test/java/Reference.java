@@ -0,0 +1,104 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import java.util.Random;
+
+/**
+ * Naive two-dimensional convolution and gradient magnitude the optimized filter paths are compared with.
+ */
+final class Reference {
+  private Reference() {
+  }
+
+  /**
+   * Apply a pair of matrices the way the original filter loop did: the result of each window is stored at its top
+   * left pixel, pixels too close to the right or bottom edge for a full window keeping their gray level.
+   */
+  static int[] convolve(int[][] filterX, int[][] filterY, int[] pixels, int width, int height, Magnitude magnitude) {
+    int size = filterX.length;
+    int[] gradient = pixels.clone();
+    int x, y, i, j;
+
+    for(y = 0; y + size <= height; y++) {
+      for(x = 0; x + size <= width; x++) {
+        long gx = 0, gy = 0;
+
+        for(i = 0; i < size; i++) {
+          for(j = 0; j < size; j++) {
+            gx += (long) filterX[i][j] * pixels[(y + i) * width + x + j];
+            gy += (long) filterY[i][j] * pixels[(y + i) * width + x + j];
+          }
+        }
+
+        gradient[y * width + x] = magnitude(gx, gy, magnitude);
+      }
+    }
+
+    return gradient;
+  }
+
+  /**
+   * @return Magnitude of the responses in range 0 - 255, computed without any shortcut.
+   */
+  static int magnitude(long gx, long gy, Magnitude magnitude) {
+    switch(magnitude) {
+      case L1:
+        return (int) Math.min(255, Math.abs(gx) + Math.abs(gy));
+      case LINF:
+        return (int) Math.min(255, Math.max(Math.abs(gx), Math.abs(gy)));
+      default:
+        long squared = gx * gx + gy * gy, root = (long) Math.sqrt((double) squared);
+
+        while(root * root > squared) {
+          root--;
+        }
+        while((root + 1) * (root + 1) <= squared) {
+          root++;
+        }
+        return (int) Math.min(255, root);
+    }
+  }
+
+  /**
+   * @return Gray levels made of flat areas with sharp and soft edges and of noise, so that magnitudes cover the
+   * whole range.
+   */
+  static int[] grays(int width, int height, Random random) {
+    int[] pixels = new int[width * height];
+    int level = random.nextInt(256), i;
+
+    for(i = 0; i < pixels.length; i++) {
+      switch(random.nextInt(8)) {
+        case 0:
+          level = random.nextInt(256);
+          break;
+        case 1:
+          level = Math.max(0, Math.min(255, level + random.nextInt(21) - 10));
+          break;
+        default:
+          break;
+      }
+      pixels[i] = i % 7 == 0 ? random.nextInt(256) : level;
+    }
+
+    return pixels;
+  }
+}
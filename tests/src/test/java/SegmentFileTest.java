@@ -0,0 +1,161 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of random segments through {@link SegmentFile}, across block and buffer boundaries, and truncated
+ * files.
+ */
+class SegmentFileTest {
+  @TempDir
+  File directory;
+
+  /**
+   * Random segments, half of them chained as polylines, of coordinates far enough apart for every varint length.
+   */
+  private static SegmentStore randomSegments(int count, long seed) {
+    SegmentStore segments = new SegmentStore();
+    Random random = new Random(seed);
+    int x = 0, y = 0, i;
+
+    for(i = 0; i < count; i++) {
+      int x1 = random.nextBoolean() ? x : random.nextInt(1 << 20) - (1 << 19);
+      int y1 = random.nextBoolean() ? y : random.nextInt(1 << 20) - (1 << 19);
+      int range = 1 << random.nextInt(16);
+
+      x = x1 + random.nextInt(2 * range + 1) - range;
+      y = y1 + random.nextInt(2 * range + 1) - range;
+      segments.add(x1, y1, x, y);
+    }
+
+    return segments;
+  }
+
+  private File write(SegmentStore segments, int width, int height) throws IOException {
+    File file = new File(this.directory, "segments" + SegmentFile.EXTENSION);
+
+    try(SegmentFile.Output out = new SegmentFile.Output(file)) {
+      SegmentStore.Cursor s = segments.cursor();
+
+      out.begin(width, height);
+      while(s.next()) {
+        out.add(s.getX1(), s.getY1(), s.getX2(), s.getY2());
+      }
+    }
+
+    return file;
+  }
+
+  private static void assertSegments(SegmentStore expected, File file, int width, int height) throws IOException {
+    try(SegmentFile.Input in = new SegmentFile.Input(file)) {
+      int i;
+
+      assertEquals(width, in.getWidth());
+      assertEquals(height, in.getHeight());
+
+      for(i = 0; i < expected.size(); i++) {
+        assertTrue(in.next(), "segment " + i + " missing");
+        assertEquals(expected.getX1(i), in.getX1(), "x1 of segment " + i);
+        assertEquals(expected.getY1(i), in.getY1(), "y1 of segment " + i);
+        assertEquals(expected.getX2(i), in.getX2(), "x2 of segment " + i);
+        assertEquals(expected.getY2(i), in.getY2(), "y2 of segment " + i);
+      }
+
+      assertFalse(in.next());
+      assertFalse(in.next());
+    }
+  }
+
+  @Test
+  void roundTripsAcrossBlocksAndBuffers() throws IOException {
+    int[] counts = { 0, 1, 4095, 4096, 4097, 3 * 4096, 200000 };
+
+    for(int count : counts) {
+      SegmentStore segments = randomSegments(count, count);
+      assertSegments(segments, this.write(segments, 4000 + count, 3000), 4000 + count, 3000);
+    }
+  }
+
+  @Test
+  void joinsPolylinePoints() throws IOException {
+    File file = new File(this.directory, "polyline" + SegmentFile.EXTENSION);
+    SegmentStore expected = new SegmentStore();
+
+    try(VectorOutput out = VectorOutput.open(file)) {
+      out.begin(10, 10);
+      out.moveTo(1, 1);
+      out.lineTo(5, 1);
+      out.lineTo(5, 7);
+      out.line(0, 9, 9, 0);
+    }
+
+    expected.add(1, 1, 5, 1);
+    expected.add(5, 1, 5, 7);
+    expected.add(0, 9, 9, 0);
+    assertSegments(expected, file, 10, 10);
+  }
+
+  @Test
+  void rejectsOtherFiles() throws IOException {
+    File file = new File(this.directory, "other" + SegmentFile.EXTENSION);
+
+    try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.writeBytes("<svg></svg>");
+    }
+
+    assertThrows(IOException.class, () -> new SegmentFile.Input(file).close());
+  }
+
+  @Test
+  void failsOnTruncatedFiles() throws IOException {
+    SegmentStore segments = randomSegments(10000, 42);
+    long length = this.write(segments, 640, 480).length();
+    long[] cuts = { 3, 6, length / 3, length / 2, length - 2, length - 1 };
+
+    for(long cut : cuts) {
+      File file = this.write(segments, 640, 480);
+
+      try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+        out.setLength(cut);
+      }
+
+      assertThrows(IOException.class, () -> {
+        try(SegmentFile.Input in = new SegmentFile.Input(file)) {
+          while(in.next()) {
+            // Read until the end, which must not be reached silently.
+          }
+        }
+      }, "file cut at " + cut + " of " + length + " bytes");
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Queries of {@link SegmentIndex} compared with a scan of all the segments, on random segments and regions.
+ */
+class SegmentIndexTest {
+  private static final int WIDTH = 4000, HEIGHT = 3000;
+
+  /**
+   * Random segments, mostly short like detected edges, some of them long or reaching out of the image.
+   */
+  private static SegmentStore randomSegments(int count, Random random) {
+    SegmentStore segments = new SegmentStore();
+    int i;
+
+    for(i = 0; i < count; i++) {
+      int x1 = random.nextInt(WIDTH + 200) - 100, y1 = random.nextInt(HEIGHT + 200) - 100;
+      int range = random.nextInt(10) == 0 ? WIDTH : 8;
+
+      segments.add(x1, y1, x1 + random.nextInt(2 * range + 1) - range, y1 + random.nextInt(2 * range + 1) - range);
+    }
+
+    return segments;
+  }
+
+  private static Rectangle randomRegion(Random random) {
+    int width = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(WIDTH / 2);
+    int height = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(HEIGHT / 2);
+
+    return new Rectangle(random.nextInt(WIDTH + 400) - 200 - width / 2, random.nextInt(HEIGHT + 400) - 200 - height / 2,
+      width, height);
+  }
+
+  /**
+   * Indexes of the segments whose bounding box meets a region, in increasing order.
+   */
+  private static int[] scan(SegmentStore segments, Rectangle region) {
+    int[] found = new int[segments.size()];
+    int count = 0, i;
+
+    if(region.isEmpty()) {
+      return new int[0];
+    }
+
+    int maxX = region.x + region.width - 1, maxY = region.y + region.height - 1;
+
+    for(i = 0; i < segments.size(); i++) {
+      int x1 = segments.getX1(i), y1 = segments.getY1(i), x2 = segments.getX2(i), y2 = segments.getY2(i);
+
+      if(Math.min(x1, x2) <= maxX && Math.max(x1, x2) >= region.x &&
+        Math.min(y1, y2) <= maxY && Math.max(y1, y2) >= region.y) {
+        found[count++] = i;
+      }
+    }
+
+    return Arrays.copyOf(found, count);
+  }
+
+  @Test
+  void queriesMatchScan() {
+    // Sizes around the node size and the first levels of the tree.
+    int[] counts = { 0, 1, 15, 16, 17, 255, 256, 257, 4097, 100000 };
+    Random random = new Random(1);
+    int i;
+
+    for(int count : counts) {
+      SegmentStore segments = randomSegments(count, random);
+      SegmentIndex index = SegmentIndex.of(segments);
+
+      assertEquals(count, index.size());
+      for(i = 0; i < 200; i++) {
+        Rectangle region = randomRegion(random);
+        assertArrayEquals(scan(segments, region), index.query(region), count + " segments, " + region);
+      }
+
+      assertArrayEquals(scan(segments, new Rectangle(-1000, -1000, 3 * WIDTH, 3 * HEIGHT)),
+        index.query(new Rectangle(-1000, -1000, 3 * WIDTH, 3 * HEIGHT)));
+    }
+  }
+
+  @Test
+  void boundsMatchScan() {
+    Random random = new Random(2);
+    SegmentStore segments = randomSegments(10000, random);
+    int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, i;
+
+    for(i = 0; i < segments.size(); i++) {
+      minX = Math.min(minX, Math.min(segments.getX1(i), segments.getX2(i)));
+      minY = Math.min(minY, Math.min(segments.getY1(i), segments.getY2(i)));
+      maxX = Math.max(maxX, Math.max(segments.getX1(i), segments.getX2(i)));
+      maxY = Math.max(maxY, Math.max(segments.getY1(i), segments.getY2(i)));
+    }
+
+    assertEquals(new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1), SegmentIndex.of(segments).getBounds());
+    assertEquals(new Rectangle(), SegmentIndex.of(new SegmentStore()).getBounds());
+  }
+}
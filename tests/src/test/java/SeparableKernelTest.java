@@ -0,0 +1,139 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The two one-dimensional passes of {@link SeparableKernel} compared with the naive two-dimensional convolution.
+ */
+class SeparableKernelTest {
+  private static final int[][] SOBEL_X = { { -1, 0, 1 }, { -2, 0, 2 }, { -1, 0, 1 } };
+  private static final int[][] SOBEL_Y = { { -1, -2, -1 }, { 0, 0, 0 }, { 1, 2, 1 } };
+  private static final int[][] PREWITT_X = { { -1, 0, 1 }, { -1, 0, 1 }, { -1, 0, 1 } };
+  private static final int[][] PREWITT_Y = { { -1, -1, -1 }, { 0, 0, 0 }, { 1, 1, 1 } };
+
+  /**
+   * @return Outer product of random column and row vectors, some weights being zero.
+   */
+  private static int[][] separable(int size, Random random) {
+    int[] column = new int[size], row = new int[size];
+    int[][] matrix = new int[size][size];
+    int i, j;
+
+    for(i = 0; i < size; i++) {
+      column[i] = random.nextInt(7) - 3;
+      row[i] = random.nextInt(7) - 3;
+    }
+    column[random.nextInt(size)] = 1;
+    row[random.nextInt(size)] = -2;
+
+    for(i = 0; i < size; i++) {
+      for(j = 0; j < size; j++) {
+        matrix[i][j] = column[i] * row[j];
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Run the separable passes over the image, as one band or as two bands split at a random row.
+   */
+  private static int[] convolve(int[][] filterX, int[][] filterY, int[] pixels, int width, int height,
+                                Magnitude magnitude, Random random) {
+    CustomFilter filter = new CustomFilter(null, -1, filterX, filterY);
+    SeparableKernel kernel = SeparableKernel.of(filterX, filterY);
+    int[] gradient = new int[pixels.length];
+    int split = random.nextInt(height + 1);
+
+    assertNotNull(kernel);
+    filter.setMagnitude(magnitude);
+    kernel.convolve(filter, pixels, gradient, width, height, 0, split, -1);
+    kernel.convolve(filter, pixels, gradient, width, height, split, height, -1);
+    return gradient;
+  }
+
+  private static void check(int[][] filterX, int[][] filterY, Random random) {
+    int size = filterX.length;
+    int[] widths = { 1, size - 1, size, size + 1, 61 };
+    int[] heights = { 1, size - 1, size, size + 1, 45 };
+
+    for(int width : widths) {
+      for(int height : heights) {
+        for(Magnitude magnitude : Magnitude.values()) {
+          int[] pixels = Reference.grays(width, height, random);
+
+          assertArrayEquals(Reference.convolve(filterX, filterY, pixels, width, height, magnitude),
+            convolve(filterX, filterY, pixels, width, height, magnitude, random),
+            size + "x" + size + " matrices, " + width + "x" + height + " image, " + magnitude);
+        }
+      }
+    }
+  }
+
+  @Test
+  void sobelAndPrewittMatchReference() {
+    Random random = new Random(1);
+
+    check(SOBEL_X, SOBEL_Y, random);
+    check(PREWITT_X, PREWITT_Y, random);
+  }
+
+  @Test
+  void separableMatricesMatchReference() {
+    Random random = new Random(2);
+    int size, i;
+
+    for(size = Convolution.MIN_MATRIX_SIZE; size <= Convolution.MAX_MATRIX_SIZE; size++) {
+      for(i = 0; i < 4; i++) {
+        check(separable(size, random), separable(size, random), random);
+      }
+    }
+  }
+
+  @Test
+  void factorsOuterProductsOnly() {
+    Random random = new Random(3);
+    int size, i, j;
+
+    for(size = Convolution.MIN_MATRIX_SIZE; size <= Convolution.MAX_MATRIX_SIZE; size++) {
+      int[][] matrix = separable(size, random);
+      int[][] factors = SeparableKernel.factor(matrix);
+
+      assertNotNull(factors);
+      for(i = 0; i < size; i++) {
+        for(j = 0; j < size; j++) {
+          matrix[i][j] -= factors[0][i] * factors[1][j];
+        }
+        assertArrayEquals(new int[size], matrix[i]);
+      }
+    }
+
+    assertNull(SeparableKernel.factor(new int[][] { { 0, 1, 0 }, { 1, -4, 1 }, { 0, 1, 0 } }));
+    assertNull(SeparableKernel.factor(new int[][] { { 1, 0 }, { 0, -1 } }));
+    assertNull(SeparableKernel.factor(new int[3][3]));
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * JED - Java Edge Detector
+ *
+ * Convolution filtering and simple edge detection program.
+ *
+ * Copyright (C) 2016  Marek Felsoci
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Segments found by strips of {@link Vectorization}, compared across numbers of threads and runs, and stitched back
+ * across the boundaries of the strips.
+ */
+class VectorizationTest {
+  private static final int[] PARALLELISMS = { 1, 2, 3, Workers.DEFAULT_PARALLELISM, 8 };
+
+  /**
+   * Random white pixels and lines in the four scanned directions, many of them crossing strip boundaries.
+   */
+  private static Bitmap randomBitmap(int width, int height, Random random) {
+    Bitmap bitmap = new Bitmap(width, height);
+    int i, k;
+
+    for(i = 0; i < width * height / 20; i++) {
+      bitmap.set(random.nextInt(width), random.nextInt(height));
+    }
+
+    for(i = 0; i < 300; i++) {
+      int x = random.nextInt(width), y = random.nextInt(height), length = random.nextInt(600);
+      int dx = random.nextInt(3) - 1, dy = random.nextInt(2);
+
+      for(k = 0; k < length && x >= 0 && x < width && y < height; k++, x += dx, y += dy) {
+        bitmap.set(x, y);
+      }
+    }
+
+    return bitmap;
+  }
+
+  private static SegmentStore vectorize(Bitmap bitmap, int parallelism) {
+    Vectorization vectorization = new Vectorization(bitmap);
+
+    vectorization.setStriped(true);
+    vectorization.setParallelism(parallelism);
+    vectorization.processImage();
+    return vectorization.getSegmentStore();
+  }
+
+  private static void assertSameSegments(SegmentStore expected, SegmentStore actual, String message) {
+    int i;
+
+    assertEquals(expected.size(), actual.size(), message + ", segment count");
+    for(i = 0; i < expected.size(); i++) {
+      assertEquals(expected.getX1(i), actual.getX1(i), message + ", x1 of segment " + i);
+      assertEquals(expected.getY1(i), actual.getY1(i), message + ", y1 of segment " + i);
+      assertEquals(expected.getX2(i), actual.getX2(i), message + ", x2 of segment " + i);
+      assertEquals(expected.getY2(i), actual.getY2(i), message + ", y2 of segment " + i);
+    }
+  }
+
+  private static boolean contains(SegmentStore segments, int x1, int y1, int x2, int y2) {
+    int i;
+
+    for(i = 0; i < segments.size(); i++) {
+      if(segments.getX1(i) == x1 && segments.getY1(i) == y1 && segments.getX2(i) == x2 && segments.getY2(i) == y2) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  void sameSegmentsWhateverTheParallelism() {
+    Random random = new Random(1);
+    // Heights of a single strip, of whole strips and of a last partial strip.
+    int[] heights = { Vectorization.STRIP_ROWS, 4 * Vectorization.STRIP_ROWS, 5 * Vectorization.STRIP_ROWS + 37 };
+
+    for(int height : heights) {
+      Bitmap bitmap = randomBitmap(500, height, random);
+      SegmentStore expected = vectorize(bitmap, 1);
+
+      for(int parallelism : PARALLELISMS) {
+        String message = "height " + height + ", parallelism " + parallelism;
+
+        assertSameSegments(expected, vectorize(bitmap, parallelism), message);
+        assertSameSegments(expected, vectorize(bitmap, parallelism), message + ", second run");
+      }
+    }
+  }
+
+  @Test
+  void stitchesSegmentsAcrossStrips() {
+    int height = 4 * Vectorization.STRIP_ROWS, i;
+    Bitmap bitmap = new Bitmap(900, height);
+
+    for(i = 0; i < height; i++) {
+      bitmap.set(7, i);
+    }
+    for(i = 0; i < 500; i++) {
+      bitmap.set(100 + i, 200 + i);
+    }
+
+    for(int parallelism : PARALLELISMS) {
+      SegmentStore segments = vectorize(bitmap, parallelism);
+
+      // The first row of the image starts no segment.
+      assertTrue(contains(segments, 7, 1, 7, height - 1), "vertical line, parallelism " + parallelism);
+      assertTrue(contains(segments, 100, 200, 599, 699), "diagonal line, parallelism " + parallelism);
+      assertEquals(2, segments.size(), "parallelism " + parallelism);
+    }
+  }
+}